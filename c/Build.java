@@ -131,7 +131,7 @@ public final class Build {
         if(osName.contains("windows")) {
             return new String[]{
                     "clang", "-std=c17", "-Wall", "-shared", "-march=native", "-O3", "-g0", "-fcolor-diagnostics", "-fansi-escape-codes",
-                    "-v",
+                    "-v", "-DRPMALLOC_FIRST_CLASS_HEAPS=1",
                     ".\\mem.c", "..\\thirdparty\\rpmalloc\\rpmalloc\\rpmalloc.c", "..\\thirdparty.\\wepoll.\\wepoll.c",
                     "-lAdvapi32", "-lws2_32", "-pedantic",
                     "-o", "..\\lib\\" + libName
@@ -144,7 +144,7 @@ public final class Build {
             return new String[]{
                     "clang", "-std=c17", "-Wall", "-Wextra", "-Werror", "-Wvla", "-Wshadow", "-Wconversion",
                     "-shared", "-march=native", "-O3", "-g0", "-fcolor-diagnostics", "-fansi-escape-codes",
-                    "-v", "-fPIC", "-flto", "-fvisibility=hidden",
+                    "-v", "-fPIC", "-flto", "-fvisibility=hidden", "-DRPMALLOC_FIRST_CLASS_HEAPS=1",
                     "./mem.c", "../thirdparty/rpmalloc/rpmalloc/rpmalloc.c",
                     "-pedantic", "-Wl,-s",
                     "-o", "../lib/" + libName
@@ -1,9 +1,22 @@
+#if defined(__linux__)
+    #define _GNU_SOURCE
+#endif
+
 #include "common.h"
 #include "mem.h"
 
 #include "../thirdparty/rpmalloc/rpmalloc/rpmalloc.h"
+#include <stdio.h>
 #include <stdlib.h>
 #include <string.h>
+#include <stdint.h>
+
+#ifdef OS_WINDOWS
+    #include <windows.h>
+#else
+    #include <sys/mman.h>
+    #include <unistd.h>
+#endif
 
 // system malloc series functions
 
@@ -37,6 +50,15 @@ void jing_aligned_free(void *ptr) {
 
 // rpmalloc series functions
 
+// rpmalloc binds its heap to the calling OS thread, which is the carrier for virtual threads, so every carrier is
+// initialized lazily on its first call, the check is only a thread local read, memory allocated on one carrier could
+// be freed on another as rpmalloc defers cross thread frees to the owning heap
+static inline void jing_rp_ensure_thread(void) {
+    if(!rpmalloc_is_thread_initialized()) {
+        rpmalloc_thread_initialize();
+    }
+}
+
 int jing_rp_initialize(void) {
     return rpmalloc_initialize();
 }
@@ -54,21 +76,297 @@ void jing_rp_finalize(void) {
 }
 
 void *jing_rp_malloc(size_t size) {
+    jing_rp_ensure_thread();
     return rpmalloc(size);
 }
 
 void jing_rp_free(void *ptr) {
+    jing_rp_ensure_thread();
     rpfree(ptr);
 }
 
 void *jing_rp_realloc(void *ptr, size_t size) {
+    jing_rp_ensure_thread();
     return rprealloc(ptr, size);
 }
 
 void *jing_rp_aligned_alloc(size_t alignment, size_t size) {
+    jing_rp_ensure_thread();
     return rpaligned_alloc(alignment, size);
 }
 
+// rpmalloc first class heap functions, a heap must only be used by one thread at a time
+
+void *jing_rp_heap_acquire(void) {
+    jing_rp_ensure_thread();
+    return rpmalloc_heap_acquire();
+}
+
+void jing_rp_heap_release(void *heap) {
+    rpmalloc_heap_release((rpmalloc_heap_t *) heap);
+}
+
+void *jing_rp_heap_malloc(void *heap, size_t size) {
+    return rpmalloc_heap_alloc((rpmalloc_heap_t *) heap, size);
+}
+
+void *jing_rp_heap_aligned_alloc(void *heap, size_t alignment, size_t size) {
+    return rpmalloc_heap_aligned_alloc((rpmalloc_heap_t *) heap, alignment, size);
+}
+
+void *jing_rp_heap_realloc(void *heap, void *ptr, size_t size) {
+    return rpmalloc_heap_realloc((rpmalloc_heap_t *) heap, ptr, size, 0);
+}
+
+void jing_rp_heap_free(void *heap, void *ptr) {
+    rpmalloc_heap_free((rpmalloc_heap_t *) heap, ptr);
+}
+
+void jing_rp_heap_free_all(void *heap) {
+    rpmalloc_heap_free_all((rpmalloc_heap_t *) heap);
+}
+
+size_t jing_rp_usable_size(void *ptr) {
+    return rpmalloc_usable_size(ptr);
+}
+
+// fill the global statistics into stats as size_t[7], most of them would be zero unless built with ENABLE_STATISTICS
+void jing_rp_global_statistics(size_t *stats) {
+    rpmalloc_global_statistics_t s;
+    rpmalloc_global_statistics(&s);
+    stats[0] = s.mapped;
+    stats[1] = s.mapped_peak;
+    stats[2] = s.cached;
+    stats[3] = s.huge_alloc;
+    stats[4] = s.huge_alloc_peak;
+    stats[5] = s.mapped_total;
+    stats[6] = s.unmapped_total;
+}
+
+// mmap series functions, every mapping holds a header with the mapping size, the data offset and the huge page size
+// (zero if not huge page backed), which is stored right before the returned pointer, so the mapping could be resized or
+// released by the pointer alone
+
+#define JING_MMAP_HEADER 64
+
+#define JING_MMAP_FIELDS 3
+
+static size_t jing_page_size(void) {
+#ifdef OS_WINDOWS
+    SYSTEM_INFO info;
+    GetSystemInfo(&info);
+    return (size_t) info.dwPageSize;
+#else
+    return (size_t) sysconf(_SC_PAGESIZE);
+#endif
+}
+
+static void *jing_mmap_map(size_t map_size, int flags) {
+#ifdef OS_WINDOWS
+    (void) flags;
+    return VirtualAlloc(NULL, map_size, MEM_RESERVE | MEM_COMMIT, PAGE_READWRITE);
+#else
+    int map_flags = MAP_PRIVATE | MAP_ANONYMOUS;
+#ifdef MAP_POPULATE
+    if(flags & JING_MMAP_POPULATE) {
+        map_flags |= MAP_POPULATE;
+    }
+#endif
+    void *base = mmap(NULL, map_size, PROT_READ | PROT_WRITE, map_flags, -1, 0);
+    return base == MAP_FAILED ? NULL : base;
+#endif
+}
+
+static void jing_mmap_unmap(void *base, size_t map_size) {
+#ifdef OS_WINDOWS
+    (void) map_size;
+    VirtualFree(base, 0, MEM_RELEASE);
+#else
+    munmap(base, map_size);
+#endif
+}
+
+static void *jing_mmap_header(char *base, size_t map_size, size_t offset, size_t huge) {
+    size_t *header = (size_t *) (base + offset - JING_MMAP_FIELDS * sizeof(size_t));
+    header[0] = map_size;
+    header[1] = offset;
+    header[2] = huge;
+    return base + offset;
+}
+
+#if defined(OS_LINUX) && defined(MADV_HUGEPAGE)
+
+#define JING_MMAP_THP 1
+
+// PMD sized transparent huge page, read once from sysfs, 2 MB if unavailable
+static size_t jing_huge_page_size(void) {
+    static size_t huge_page_size = 0;
+    size_t r = __atomic_load_n(&huge_page_size, __ATOMIC_RELAXED);
+    if(r == 0) {
+        r = 2 * 1024 * 1024;
+        FILE *f = fopen("/sys/kernel/mm/transparent_hugepage/hpage_pmd_size", "r");
+        if(f != NULL) {
+            unsigned long long v;
+            if(fscanf(f, "%llu", &v) == 1 && v != 0 && (v & (v - 1)) == 0) {
+                r = (size_t) v;
+            }
+            fclose(f);
+        }
+        __atomic_store_n(&huge_page_size, r, __ATOMIC_RELAXED);
+    }
+    return r;
+}
+
+// reserve map_size bytes whose base + lead is aligned to huge, by over-reserving a huge page and trimming both ends
+static char *jing_mmap_reserve_aligned(size_t map_size, size_t lead, size_t huge) {
+    size_t reserved = map_size + huge;
+    char *raw = (char *) mmap(NULL, reserved, PROT_READ | PROT_WRITE, MAP_PRIVATE | MAP_ANONYMOUS, -1, 0);
+    if(raw == MAP_FAILED) {
+        return NULL;
+    }
+    char *base = (char *) ((((uintptr_t) raw + lead + huge - 1) & ~((uintptr_t) huge - 1)) - lead);
+    if(base > raw) {
+        munmap(raw, (size_t) (base - raw));
+    }
+    char *end = base + map_size;
+    if(raw + reserved > end) {
+        munmap(end, (size_t) (raw + reserved - end));
+    }
+    return base;
+}
+
+// prefault after the huge page advice, so the range is populated with huge pages where possible
+static void jing_mmap_populate(char *start, size_t len) {
+#ifdef MADV_POPULATE_WRITE
+    if(madvise(start, len, MADV_POPULATE_WRITE) == 0) {
+        return ;
+    }
+#endif
+    size_t page_size = jing_page_size();
+    for(size_t i = 0; i < len; i += page_size) {
+        ((volatile char *) start)[i] = 0;
+    }
+}
+
+// the data starts at a huge page boundary and spans whole huge pages, the header lives in a separate leading page,
+// so THP could back the entire buffer, the advice is only a hint and ignored when THP is disabled
+static void *jing_mmap_alloc_huge(size_t size, int flags) {
+    size_t page_size = jing_page_size();
+    size_t huge = jing_huge_page_size();
+    if(size > SIZE_MAX - page_size - 2 * huge) {
+        return NULL;
+    }
+    size_t data_size = size == 0 ? huge : (size + huge - 1) & ~(huge - 1);
+    size_t map_size = page_size + data_size;
+    char *base = jing_mmap_reserve_aligned(map_size, page_size, huge);
+    if(base == NULL) {
+        return NULL;
+    }
+    // advised as a whole, a split mapping could not be moved by mremap
+    madvise(base, map_size, MADV_HUGEPAGE);
+    if(flags & JING_MMAP_POPULATE) {
+        jing_mmap_populate(base + page_size, data_size);
+    }
+    return jing_mmap_header(base, map_size, page_size, huge);
+}
+
+#endif
+
+void *jing_mmap_alloc(size_t size, size_t alignment, int flags) {
+    size_t page_size = jing_page_size();
+    size_t offset = alignment > JING_MMAP_HEADER ? alignment : JING_MMAP_HEADER;
+    if(offset > page_size || (offset & (offset - 1)) != 0 || size > SIZE_MAX - offset - page_size) {
+        return NULL;
+    }
+#ifdef JING_MMAP_THP
+    if(flags & JING_MMAP_HUGE_PAGE) {
+        return jing_mmap_alloc_huge(size, flags);
+    }
+#endif
+    size_t map_size = (size + offset + page_size - 1) & ~(page_size - 1);
+    char *base = (char *) jing_mmap_map(map_size, flags);
+    if(base == NULL) {
+        return NULL;
+    }
+    return jing_mmap_header(base, map_size, offset, 0);
+}
+
+void *jing_mmap_realloc(void *ptr, size_t size, int flags) {
+    if(ptr == NULL) {
+        return jing_mmap_alloc(size, 0, flags);
+    }
+    size_t *header = (size_t *) ((char *) ptr - JING_MMAP_FIELDS * sizeof(size_t));
+    size_t map_size = header[0];
+    size_t offset = header[1];
+    size_t huge = header[2];
+    size_t page_size = jing_page_size();
+    if(size > SIZE_MAX - offset - page_size - 2 * huge) {
+        return NULL;
+    }
+    size_t new_map_size;
+    if(huge != 0) {
+        new_map_size = offset + (size == 0 ? huge : (size + huge - 1) & ~(huge - 1));
+    } else {
+        new_map_size = (size + offset + page_size - 1) & ~(page_size - 1);
+    }
+    if(new_map_size == map_size) {
+        return ptr;
+    }
+    char *base = (char *) ptr - offset;
+    char *new_base;
+#ifdef JING_MMAP_THP
+    if(huge != 0) {
+        // resize in place if possible, otherwise move the page tables onto a new huge page aligned reservation
+        new_base = (char *) mremap(base, map_size, new_map_size, 0);
+        if(new_base == MAP_FAILED) {
+            char *target = jing_mmap_reserve_aligned(new_map_size, offset, huge);
+            if(target == NULL) {
+                return NULL;
+            }
+            new_base = (char *) mremap(base, map_size, new_map_size, MREMAP_MAYMOVE | MREMAP_FIXED, target);
+            if(new_base == MAP_FAILED) {
+                munmap(target, new_map_size);
+                return NULL;
+            }
+        }
+        if(new_map_size > map_size) {
+            madvise(new_base, new_map_size, MADV_HUGEPAGE);
+            if(flags & JING_MMAP_POPULATE) {
+                jing_mmap_populate(new_base + map_size, new_map_size - map_size);
+            }
+        }
+        header = (size_t *) (new_base + offset - JING_MMAP_FIELDS * sizeof(size_t));
+        header[0] = new_map_size;
+        return new_base + offset;
+    }
+#endif
+#ifdef OS_LINUX
+    // remap the page tables instead of copying the content
+    new_base = (char *) mremap(base, map_size, new_map_size, MREMAP_MAYMOVE);
+    if(new_base == MAP_FAILED) {
+        return NULL;
+    }
+#else
+    new_base = (char *) jing_mmap_map(new_map_size, flags);
+    if(new_base == NULL) {
+        return NULL;
+    }
+    memcpy(new_base, base, (map_size < new_map_size ? map_size : new_map_size));
+    jing_mmap_unmap(base, map_size);
+#endif
+    header = (size_t *) (new_base + offset - JING_MMAP_FIELDS * sizeof(size_t));
+    header[0] = new_map_size;
+    return new_base + offset;
+}
+
+void jing_mmap_free(void *ptr) {
+    if(ptr == NULL) {
+        return ;
+    }
+    size_t *header = (size_t *) ((char *) ptr - JING_MMAP_FIELDS * sizeof(size_t));
+    jing_mmap_unmap((char *) ptr - header[1], header[0]);
+}
+
 // mem series functions
 
 ptrdiff_t jing_memchr(const void* ptr, char ch, size_t count) {
@@ -30,6 +30,34 @@ EXPORT_SYMBOL void *jing_rp_realloc(void *ptr, size_t size);
 
 EXPORT_SYMBOL void *jing_rp_aligned_alloc(size_t alignment, size_t size);
 
+EXPORT_SYMBOL void *jing_rp_heap_acquire(void);
+
+EXPORT_SYMBOL void jing_rp_heap_release(void *heap);
+
+EXPORT_SYMBOL void *jing_rp_heap_malloc(void *heap, size_t size);
+
+EXPORT_SYMBOL void *jing_rp_heap_aligned_alloc(void *heap, size_t alignment, size_t size);
+
+EXPORT_SYMBOL void *jing_rp_heap_realloc(void *heap, void *ptr, size_t size);
+
+EXPORT_SYMBOL void jing_rp_heap_free(void *heap, void *ptr);
+
+EXPORT_SYMBOL void jing_rp_heap_free_all(void *heap);
+
+EXPORT_SYMBOL size_t jing_rp_usable_size(void *ptr);
+
+EXPORT_SYMBOL void jing_rp_global_statistics(size_t *stats);
+
+#define JING_MMAP_HUGE_PAGE 1
+
+#define JING_MMAP_POPULATE 2
+
+EXPORT_SYMBOL void *jing_mmap_alloc(size_t size, size_t alignment, int flags);
+
+EXPORT_SYMBOL void *jing_mmap_realloc(void *ptr, size_t size, int flags);
+
+EXPORT_SYMBOL void jing_mmap_free(void *ptr);
+
 EXPORT_SYMBOL ptrdiff_t jing_memchr(const void* ptr, char ch, size_t count);
 
 EXPORT_SYMBOL void jing_memcpy(void* dest, const void* src, size_t count);
@@ -37,6 +37,18 @@ public sealed interface Allocator extends SegmentAllocator,  AutoCloseable {
         return new DirectGrowableAllocator(m);
     }
 
+    default DirectRegionAllocator regionAllocator() {
+        return regionAllocator(DirectRegionAllocator.DEFAULT_CHUNK_SIZE, false);
+    }
+
+    default DirectRegionAllocator regionAllocator(long chunkSize, boolean retainFirst) {
+        Mem m = MEM_SCOPE.orElse(SysMem.instance());
+        if(chunkSize <= 0L) {
+            throw new IllegalArgumentException("Chunk size must be greater than zero");
+        }
+        return new DirectRegionAllocator(m, chunkSize, retainFirst);
+    }
+
     final class HeapAllocator implements Allocator {
         @Override
         public MemorySegment allocate(long byteSize, long byteAlignment) {
@@ -70,10 +82,12 @@ public sealed interface Allocator extends SegmentAllocator,  AutoCloseable {
         private final Mem m;
         private final long[] ptrs;
         private int index = 0;
+        private final LeakDetector.Leak leak;
 
         private DirectFixedAllocator(Mem mem, int size) {
             m = mem;
             ptrs = new long[size];
+            leak = LeakDetector.sample(this, "DirectFixedAllocator");
         }
 
         @Override
@@ -85,7 +99,7 @@ public sealed interface Allocator extends SegmentAllocator,  AutoCloseable {
                 ptrs[index++] = r.address();
             } else {
                 r = m.alignedAllocateMemory(byteAlignment, byteSize);
-                ptrs[index++] = r.address() & 1;
+                ptrs[index++] = r.address() | 1;
             }
             // check address
             if(r.address() == 0) {
@@ -109,6 +123,9 @@ public sealed interface Allocator extends SegmentAllocator,  AutoCloseable {
                     m.alignedFreeMemory(MemorySegment.ofAddress(ptr & (~1)));
                 }
             }
+            if(leak != null) {
+                leak.close();
+            }
         }
     }
 
@@ -118,9 +135,11 @@ public sealed interface Allocator extends SegmentAllocator,  AutoCloseable {
         private final Mem m;
         private long[] ptrs = new long[INITIAL_SIZE];
         private int index = 0;
+        private final LeakDetector.Leak leak;
 
         private DirectGrowableAllocator(Mem mem) {
             m = mem;
+            leak = LeakDetector.sample(this, "DirectGrowableAllocator");
         }
 
         @Override
@@ -140,7 +159,7 @@ public sealed interface Allocator extends SegmentAllocator,  AutoCloseable {
                 ptrs[index++] = r.address();
             } else {
                 r = m.alignedAllocateMemory(byteAlignment, byteSize);
-                ptrs[index++] = r.address() & 1;
+                ptrs[index++] = r.address() | 1;
             }
             // check address
             if(r.address() == 0) {
@@ -164,6 +183,121 @@ public sealed interface Allocator extends SegmentAllocator,  AutoCloseable {
                     m.alignedFreeMemory(MemorySegment.ofAddress(ptr & (~1)));
                 }
             }
+            if(leak != null) {
+                leak.close();
+            }
+        }
+    }
+
+    /// Bump-pointer allocator working on chunks obtained from the scoped Mem, allocations are never freed individually,
+    /// whole chunks are released on `reset()` or `close()`, and the first chunk could be retained across resets
+    @SuppressWarnings("Duplicates")
+    final class DirectRegionAllocator implements Allocator {
+        private static final long DEFAULT_CHUNK_SIZE = Long.getLong("jing.allocator.region.size", 8192L);
+        private static final int INITIAL_SIZE = 4;
+        private final Mem m;
+        private final long chunkSize;
+        private final boolean retainFirst;
+        private long first = 0L;
+        private long[] ptrs = new long[INITIAL_SIZE];
+        private int index = 0;
+        private long next = 0L;
+        private long end = 0L;
+        private final LeakDetector.Leak leak;
+
+        private DirectRegionAllocator(Mem mem, long size, boolean retain) {
+            m = mem;
+            chunkSize = size;
+            retainFirst = retain;
+            leak = LeakDetector.sample(this, "DirectRegionAllocator");
+        }
+
+        @Override
+        public MemorySegment allocate(long byteSize, long byteAlignment) {
+            // check alignment
+            if (Long.bitCount(byteAlignment) != 1) {
+                throw new RuntimeException("Unexpected alignment : " + byteAlignment);
+            }
+            if(byteSize < 0L) {
+                throw new IllegalArgumentException("Size must not be negative");
+            }
+            // fast path, bump inside current chunk
+            long aligned = (next + byteAlignment - 1) & -byteAlignment;
+            if(next != 0L && Math.addExact(aligned, byteSize) <= end) {
+                next = aligned + byteSize;
+                return MemorySegment.ofAddress(aligned).reinterpret(byteSize);
+            }
+            // slow path, padding is only needed when chunk start couldn't satisfy the alignment
+            long required = byteAlignment <= m.alignmentBoundary() ? byteSize : Math.addExact(byteSize, byteAlignment - 1);
+            long chunk = newChunk(Math.max(chunkSize, required));
+            aligned = (chunk + byteAlignment - 1) & -byteAlignment;
+            if(required > chunkSize) {
+                // dedicated chunk, keep bumping in the current one
+                ptrs[index++] = chunk;
+            } else {
+                if(first == 0L) {
+                    first = chunk;
+                } else {
+                    ptrs[index++] = chunk;
+                }
+                next = aligned + byteSize;
+                end = chunk + chunkSize;
+            }
+            return MemorySegment.ofAddress(aligned).reinterpret(byteSize);
+        }
+
+        private long newChunk(long size) {
+            // check array size
+            if(index == ptrs.length) {
+                ptrs = Arrays.copyOf(ptrs, Math.multiplyExact(index, 2));
+            }
+            long chunk = m.allocateMemory(size).address();
+            // check address
+            if(chunk == 0L) {
+                throw new OutOfMemoryError();
+            }
+            return chunk;
+        }
+
+        /// Release all the chunks except the retained first one, all the segments allocated before are invalid then
+        public void reset() {
+            for(int i = 0; i < index; i++) {
+                m.freeMemory(MemorySegment.ofAddress(ptrs[i]));
+            }
+            index = 0;
+            if(retainFirst && first != 0L) {
+                next = first;
+                end = first + chunkSize;
+            } else {
+                if(first != 0L) {
+                    m.freeMemory(MemorySegment.ofAddress(first));
+                    first = 0L;
+                }
+                next = 0L;
+                end = 0L;
+            }
+        }
+
+        @Override
+        public boolean isNative() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+            for(int i = 0; i < index; i++) {
+                m.freeMemory(MemorySegment.ofAddress(ptrs[i]));
+            }
+            index = 0;
+            if(first != 0L) {
+                m.freeMemory(MemorySegment.ofAddress(first));
+                first = 0L;
+            }
+            next = 0L;
+            end = 0L;
+            if(leak != null) {
+                leak.close();
+            }
         }
     }
 }
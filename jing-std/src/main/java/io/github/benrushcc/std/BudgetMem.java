@@ -0,0 +1,329 @@
+package io.github.benrushcc.std;
+
+import java.lang.foreign.MemorySegment;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/// [Mem] decorator accounting every allocated byte against a hard limit
+///
+/// Each block carries a 16 bytes header recording its size, so blocks could be freed by address alone. Bytes are
+/// borrowed from the global budget in batches of `jing.budgetMem.credit.size` into striped credits, allocations and
+/// frees mostly touch only their own stripe, and credits would be reclaimed before an allocation is rejected.
+/// [#allocateMemory(long)] blocks until enough memory is freed, waiting with a [Condition] so virtual threads would
+/// unmount, while [#tryAllocateMemory(long)] and [#reallocMemory(MemorySegment, long)] fail fast by returning
+/// [MemorySegment#NULL]
+@SuppressWarnings("unused")
+public final class BudgetMem implements Mem {
+
+    private static final long CREDIT_SIZE = Math.max(Long.getLong("jing.budgetMem.credit.size", 256L * 1024L), 0L);
+
+    private static final int STRIPE_SHIFT = Math.max(1, 32 - Integer.numberOfLeadingZeros(Runtime.getRuntime().availableProcessors() - 1));
+
+    /// Stripes are spread over separate cache lines
+    private static final int STRIDE = 8;
+
+    private static final long HEADER_SIZE = 16L;
+
+    /// Notified when the outstanding bytes cross the watermarks, callbacks are invoked on the allocating or freeing
+    /// thread and should return quickly
+    public interface Listener {
+        default void softLimitExceeded(long used) {
+
+        }
+
+        default void softLimitRecovered(long used) {
+
+        }
+
+        default void hardLimitReached(long requested) {
+
+        }
+    }
+
+    public static BudgetMem of(Mem mem, long hardLimit) {
+        return of(mem, hardLimit, hardLimit, new Listener() {});
+    }
+
+    public static BudgetMem of(Mem mem, long softLimit, long hardLimit, Listener listener) {
+        if(softLimit <= 0L || hardLimit < softLimit) {
+            throw new IllegalArgumentException("Hard limit must be no less than soft limit, and both greater than zero");
+        }
+        return new BudgetMem(mem, softLimit, hardLimit, listener);
+    }
+
+    private final Mem mem;
+    private final long softLimit;
+    private final long hardLimit;
+    private final Listener listener;
+    /// Bytes borrowed from the budget, including the credits held by stripes
+    private final AtomicLong borrowed = new AtomicLong(0L);
+    private final AtomicLongArray credits = new AtomicLongArray(STRIDE << STRIPE_SHIFT);
+    private final Lock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private volatile int waiters = 0;
+    /// Whether borrowed is above the soft limit, flipped by CAS so each crossing notifies the listener exactly once
+    private final AtomicBoolean soft = new AtomicBoolean(false);
+
+    private BudgetMem(Mem m, long softLimit, long hardLimit, Listener listener) {
+        this.mem = m;
+        this.softLimit = softLimit;
+        this.hardLimit = hardLimit;
+        this.listener = listener;
+    }
+
+    private static int stripe() {
+        long id = Thread.currentThread().threadId();
+        return ((int) ((id * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - STRIPE_SHIFT))) * STRIDE;
+    }
+
+    /// Bytes currently allocated through this Mem, including headers
+    public long used() {
+        long r = borrowed.get();
+        for(int i = 0; i < credits.length(); i += STRIDE) {
+            r -= credits.get(i);
+        }
+        return Math.max(r, 0L);
+    }
+
+    public long softLimit() {
+        return softLimit;
+    }
+
+    public long hardLimit() {
+        return hardLimit;
+    }
+
+    private boolean borrow(long n) {
+        for( ; ; ) {
+            long b = borrowed.get();
+            long next = b + n;
+            if(next > hardLimit || next < 0L) {
+                return false;
+            }
+            if(borrowed.compareAndSet(b, next)) {
+                if(next > softLimit && soft.compareAndSet(false, true)) {
+                    listener.softLimitExceeded(next);
+                }
+                return true;
+            }
+        }
+    }
+
+    private void giveBack(long n) {
+        long next = borrowed.addAndGet(-n);
+        if(next <= softLimit && soft.compareAndSet(true, false)) {
+            listener.softLimitRecovered(next);
+        }
+    }
+
+    /// Move all the stripe credits back to the global budget
+    private void reclaim() {
+        long r = 0L;
+        for(int i = 0; i < credits.length(); i += STRIDE) {
+            r += credits.getAndSet(i, 0L);
+        }
+        if(r > 0L) {
+            giveBack(r);
+        }
+    }
+
+    private boolean acquire(long n) {
+        final int s = stripe();
+        long c = credits.get(s);
+        while (c >= n) {
+            if(credits.compareAndSet(s, c, c - n)) {
+                return true;
+            }
+            c = credits.get(s);
+        }
+        if(n < CREDIT_SIZE && borrow(CREDIT_SIZE)) {
+            credits.addAndGet(s, CREDIT_SIZE - n);
+            return true;
+        }
+        if(borrow(n)) {
+            return true;
+        }
+        reclaim();
+        return borrow(n);
+    }
+
+    private void release(long n) {
+        final int s = stripe();
+        long c = credits.addAndGet(s, n);
+        // credits are not cached above the soft watermark, so the recovery could be observed
+        if(c > (CREDIT_SIZE << 1) || waiters > 0 || soft.get()) {
+            long r = credits.getAndSet(s, 0L);
+            if(r > 0L) {
+                giveBack(r);
+            }
+            if(waiters > 0) {
+                lock.lock();
+                try {
+                    available.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /// Wait for the budget, return false if timed out or interrupted, a negative nanos means waiting forever
+    private boolean await(long n, long nanos) {
+        if(n > hardLimit) {
+            return false;
+        }
+        final boolean timed = nanos >= 0L;
+        lock.lock();
+        try {
+            waiters++;
+            while (!acquire(n)) {
+                if(!timed) {
+                    available.await();
+                } else if(nanos <= 0L) {
+                    return false;
+                } else {
+                    nanos = available.awaitNanos(nanos);
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            waiters--;
+            lock.unlock();
+        }
+    }
+
+    private boolean reserve(long n, long nanos) {
+        if(acquire(n)) {
+            return true;
+        }
+        listener.hardLimitReached(n);
+        return nanos != 0L && await(n, nanos);
+    }
+
+    private MemorySegment allocate(long size, long nanos) {
+        long total = Math.addExact(size, HEADER_SIZE);
+        if(!reserve(total, nanos)) {
+            return MemorySegment.NULL;
+        }
+        MemorySegment raw = mem.allocateMemory(total);
+        if(raw.address() == 0L) {
+            release(total);
+            return MemorySegment.NULL;
+        }
+        MemAccess.setLong(raw, 0L, size);
+        MemAccess.setLong(raw, Long.BYTES, HEADER_SIZE);
+        return raw.asSlice(HEADER_SIZE, size);
+    }
+
+    /// Allocate without waiting, return [MemorySegment#NULL] if the budget is exhausted
+    public MemorySegment tryAllocateMemory(long size) {
+        return allocate(size, 0L);
+    }
+
+    /// Allocate waiting at most timeout for the budget, return [MemorySegment#NULL] if timed out or interrupted
+    public MemorySegment tryAllocateMemory(long size, Duration timeout) {
+        return allocate(size, Math.max(TimeUnit.NANOSECONDS.convert(timeout), 0L));
+    }
+
+    @Override
+    public long alignmentBoundary() {
+        return mem.alignmentBoundary();
+    }
+
+    /// Allocate waiting for the budget until enough memory is freed
+    @Override
+    public MemorySegment allocateMemory(long size) {
+        return allocate(size, -1L);
+    }
+
+    private static MemorySegment header(MemorySegment seg) {
+        return MemorySegment.ofAddress(seg.address() - HEADER_SIZE).reinterpret(HEADER_SIZE);
+    }
+
+    private MemorySegment realloc(MemorySegment seg, long newSize, long nanos) {
+        if(seg.address() == 0L) {
+            return allocate(newSize, nanos);
+        }
+        MemorySegment header = header(seg);
+        long size = MemAccess.getLong(header, 0L);
+        long delta = newSize - size;
+        if(delta > 0L && !reserve(delta, nanos)) {
+            return MemorySegment.NULL;
+        }
+        MemorySegment raw = mem.reallocMemory(header, Math.addExact(newSize, HEADER_SIZE));
+        if(raw.address() == 0L) {
+            if(delta > 0L) {
+                release(delta);
+            }
+            return MemorySegment.NULL;
+        }
+        if(delta < 0L) {
+            release(-delta);
+        }
+        MemAccess.setLong(raw, 0L, newSize);
+        return raw.asSlice(HEADER_SIZE, newSize);
+    }
+
+    /// Reallocate without waiting, return [MemorySegment#NULL] leaving seg untouched if growing exceeds the budget,
+    /// a caller blocked while holding seg might be the one that others wait for, so reallocation never waits forever
+    @Override
+    public MemorySegment reallocMemory(MemorySegment seg, long newSize) {
+        return realloc(seg, newSize, 0L);
+    }
+
+    /// Reallocate waiting at most timeout for the budget, return [MemorySegment#NULL] leaving seg untouched if timed
+    /// out or interrupted
+    public MemorySegment tryReallocMemory(MemorySegment seg, long newSize, Duration timeout) {
+        return realloc(seg, newSize, Math.max(TimeUnit.NANOSECONDS.convert(timeout), 0L));
+    }
+
+    @Override
+    public void freeMemory(MemorySegment seg) {
+        if(seg.address() == 0L) {
+            return ;
+        }
+        MemorySegment header = header(seg);
+        long size = MemAccess.getLong(header, 0L);
+        mem.freeMemory(header);
+        release(size + HEADER_SIZE);
+    }
+
+    /// The header is placed right before the aligned block, padding the block by max(alignment, 16) bytes
+    @Override
+    public MemorySegment alignedAllocateMemory(long alignment, long size) {
+        long pad = Math.max(alignment, HEADER_SIZE);
+        long total = Math.addExact(size, pad);
+        if(!reserve(total, -1L)) {
+            return MemorySegment.NULL;
+        }
+        MemorySegment raw = mem.alignedAllocateMemory(alignment, total);
+        if(raw.address() == 0L) {
+            release(total);
+            return MemorySegment.NULL;
+        }
+        MemAccess.setLong(raw, pad - HEADER_SIZE, size);
+        MemAccess.setLong(raw, pad - Long.BYTES, pad);
+        return raw.asSlice(pad, size);
+    }
+
+    @Override
+    public void alignedFreeMemory(MemorySegment seg) {
+        if(seg.address() == 0L) {
+            return ;
+        }
+        MemorySegment header = header(seg);
+        long size = MemAccess.getLong(header, 0L);
+        long pad = MemAccess.getLong(header, Long.BYTES);
+        mem.alignedFreeMemory(MemorySegment.ofAddress(seg.address() - pad));
+        release(size + pad);
+    }
+}
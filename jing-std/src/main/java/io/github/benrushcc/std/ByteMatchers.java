@@ -0,0 +1,366 @@
+package io.github.benrushcc.std;
+
+import io.github.benrushcc.common.Utils;
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/// Factory of precompiled byte sets, each set would be compiled to the cheapest strategy that could represent it:
+/// broadcast comparisons for no more than three bytes (or their complement), an unsigned range check for contiguous
+/// values, and a nibble lookup table for arbitrary sets. When the preferred vector species is narrower than 16 lanes,
+/// broadcast sets fall back to SWAR and the others fall back to bitmap lookup
+@SuppressWarnings("unused")
+public final class ByteMatchers {
+    private ByteMatchers() {
+        Utils.unsupportedInstantiated();
+    }
+
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    /// Whether the vector lookup could be used, the nibble tables need at least 16 lanes
+    private static final boolean VECTOR = SPECIES.length() >= 16;
+
+    private static final ValueLayout.OfLong LONG_LE = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    /// Match any of the given bytes
+    public static ByteSet anyOf(byte... bytes) {
+        long[] bits = new long[4];
+        for (byte b : bytes) {
+            int v = b & 0xFF;
+            bits[v >>> 6] |= 1L << v;
+        }
+        return compile(bits);
+    }
+
+    /// Match bytes between lo and hi inclusive, both treated as unsigned values
+    public static ByteSet range(byte lo, byte hi) {
+        int l = lo & 0xFF;
+        int h = hi & 0xFF;
+        if(l > h) {
+            throw new IllegalArgumentException("Range lower bound must not exceed upper bound");
+        }
+        long[] bits = new long[4];
+        for(int v = l; v <= h; v++) {
+            bits[v >>> 6] |= 1L << v;
+        }
+        return compile(bits);
+    }
+
+    /// Match bytes not in the set
+    public static ByteSet not(ByteSet set) {
+        long[] bits = new long[4];
+        for(int i = 0; i < bits.length; i++) {
+            bits[i] = ~set.bits[i];
+        }
+        return compile(bits);
+    }
+
+    /// Match bytes in any of the sets
+    public static ByteSet or(ByteSet... sets) {
+        long[] bits = new long[4];
+        for (ByteSet set : sets) {
+            for(int i = 0; i < bits.length; i++) {
+                bits[i] |= set.bits[i];
+            }
+        }
+        return compile(bits);
+    }
+
+    private static boolean contains(long[] bits, int v) {
+        return (bits[v >>> 6] & (1L << v)) != 0L;
+    }
+
+    private static int count(long[] bits) {
+        int r = 0;
+        for (long bit : bits) {
+            r += Long.bitCount(bit);
+        }
+        return r;
+    }
+
+    private static List<Byte> members(long[] bits, boolean expected) {
+        List<Byte> r = new ArrayList<>();
+        for(int v = 0; v < 256; v++) {
+            if(contains(bits, v) == expected) {
+                r.add((byte) v);
+            }
+        }
+        return r;
+    }
+
+    /// Return the unsigned bounds of the set if all its members are contiguous, or null
+    private static int[] bounds(long[] bits, boolean expected) {
+        int lo = -1;
+        int hi = -1;
+        for(int v = 0; v < 256; v++) {
+            if(contains(bits, v) == expected) {
+                if(lo < 0) {
+                    lo = v;
+                } else if(hi != v - 1) {
+                    return null;
+                }
+                hi = v;
+            }
+        }
+        return lo < 0 ? null : new int[]{lo, hi};
+    }
+
+    private static ByteSet compile(long[] bits) {
+        int count = count(bits);
+        if(count >= 1 && count <= 3) {
+            return new BroadcastSet(bits, members(bits, true), false);
+        }
+        int[] bounds = bounds(bits, true);
+        if(bounds != null) {
+            return new RangeSet(bits, bounds[0], bounds[1], false);
+        }
+        if(count >= 253) {
+            return new BroadcastSet(bits, members(bits, false), true);
+        }
+        bounds = bounds(bits, false);
+        if(bounds != null) {
+            return new RangeSet(bits, bounds[0], bounds[1], true);
+        }
+        return new TableSet(bits);
+    }
+
+    /// Compiled set of bytes, searching with it from a ReadBuffer would use the specialized kernel of the set instead
+    /// of calling the matcher for each byte or vector
+    public static sealed abstract class ByteSet implements ByteMatcher, ByteVectorMatcher permits BroadcastSet, RangeSet, TableSet {
+        private final long[] bits;
+
+        ByteSet(long[] bits) {
+            this.bits = bits;
+        }
+
+        @Override
+        public final boolean match(byte b) {
+            return contains(bits, b & 0xFF);
+        }
+
+        public final ByteSet not() {
+            return ByteMatchers.not(this);
+        }
+
+        public final ByteSet or(ByteSet other) {
+            return ByteMatchers.or(this, other);
+        }
+
+        /// Search the segment from startIndex, return the index after the first matching byte, or -1 if not found
+        abstract long search(long startIndex, MemorySegment segment);
+
+        final long linearSearch(long startIndex, long endIndex, MemorySegment segment) {
+            for(long i = startIndex; i < endIndex; i++) {
+                if(contains(bits, MemAccess.getByte(segment, i) & 0xFF)) {
+                    return i + Byte.BYTES;
+                }
+            }
+            return -1L;
+        }
+
+        /// Fallback for strategies without SWAR form, checking eight bytes from a single load each time
+        final long bitmapSearch(long startIndex, MemorySegment segment) {
+            final long end = segment.byteSize();
+            long index = startIndex;
+            for( ; index + Long.BYTES <= end; index += Long.BYTES) {
+                long data = segment.get(LONG_LE, index);
+                for(int i = 0; i < Long.BYTES; i++) {
+                    if(contains(bits, (int) (data >>> (i << 3)) & 0xFF)) {
+                        return index + i + Byte.BYTES;
+                    }
+                }
+            }
+            return linearSearch(index, end, segment);
+        }
+    }
+
+    private static final class BroadcastSet extends ByteSet {
+        private final byte b0;
+        private final byte b1;
+        private final byte b2;
+        private final boolean negated;
+        private final long p0;
+        private final long p1;
+        private final long p2;
+
+        BroadcastSet(long[] bits, List<Byte> values, boolean negated) {
+            super(bits);
+            // repeat the first value to fill unused slots, so the comparison count stays fixed
+            this.b0 = values.getFirst();
+            this.b1 = values.size() > 1 ? values.get(1) : b0;
+            this.b2 = values.size() > 2 ? values.get(2) : b0;
+            this.negated = negated;
+            this.p0 = pattern(b0);
+            this.p1 = pattern(b1);
+            this.p2 = pattern(b2);
+        }
+
+        private static long pattern(byte b) {
+            return (b & 0xFFL) * 0x0101010101010101L;
+        }
+
+        private static long zeros(long data) {
+            return (data - 0x0101010101010101L) & ~data & 0x8080808080808080L;
+        }
+
+        @Override
+        public VectorMask<Byte> match(ByteVector vector) {
+            VectorMask<Byte> m = vector.eq(b0).or(vector.eq(b1)).or(vector.eq(b2));
+            return negated ? m.not() : m;
+        }
+
+        @Override
+        long search(long startIndex, MemorySegment segment) {
+            final long end = segment.byteSize();
+            long index = startIndex;
+            if(VECTOR) {
+                for( ; index + SPECIES.length() <= end; index += SPECIES.length()) {
+                    ByteVector vec = ByteVector.fromMemorySegment(SPECIES, segment, index, ByteOrder.nativeOrder());
+                    int r = match(vec).firstTrue();
+                    if(r < SPECIES.length()) {
+                        return index + r + Byte.BYTES;
+                    }
+                }
+            } else if(!negated) {
+                // the lowest flagged byte is always exact since borrows only propagate upwards
+                for( ; index + Long.BYTES <= end; index += Long.BYTES) {
+                    long data = segment.get(LONG_LE, index);
+                    long match = zeros(data ^ p0) | zeros(data ^ p1) | zeros(data ^ p2);
+                    if(match != 0L) {
+                        return index + (Long.numberOfTrailingZeros(match) >>> 3) + Byte.BYTES;
+                    }
+                }
+            } else {
+                return bitmapSearch(index, segment);
+            }
+            return linearSearch(index, end, segment);
+        }
+    }
+
+    private static final class RangeSet extends ByteSet {
+        private final byte bias;
+        private final byte limit;
+        private final boolean negated;
+
+        RangeSet(long[] bits, int lo, int hi, boolean negated) {
+            super(bits);
+            // b in [lo, hi] unsigned equals (b - lo + 0x80) <= (hi - lo + 0x80) signed
+            this.bias = (byte) (0x80 - lo);
+            this.limit = (byte) (hi - lo - 0x80);
+            this.negated = negated;
+        }
+
+        @Override
+        public VectorMask<Byte> match(ByteVector vector) {
+            return vector.add(bias).compare(negated ? VectorOperators.GT : VectorOperators.LE, limit);
+        }
+
+        @Override
+        long search(long startIndex, MemorySegment segment) {
+            final long end = segment.byteSize();
+            long index = startIndex;
+            if(!VECTOR) {
+                return bitmapSearch(index, segment);
+            }
+            for( ; index + SPECIES.length() <= end; index += SPECIES.length()) {
+                ByteVector vec = ByteVector.fromMemorySegment(SPECIES, segment, index, ByteOrder.nativeOrder());
+                int r = match(vec).firstTrue();
+                if(r < SPECIES.length()) {
+                    return index + r + Byte.BYTES;
+                }
+            }
+            return linearSearch(index, end, segment);
+        }
+    }
+
+    /// Each distinct row of low nibbles sharing the same high nibble is assigned a bit, a byte is matched when its low
+    /// nibble entry and high nibble entry share a bit, with up to 16 distinct rows split into two table pairs
+    private static final class TableSet extends ByteSet {
+        private final ByteVector lowTable;
+        private final ByteVector highTable;
+        private final ByteVector lowTableExt;
+        private final ByteVector highTableExt;
+        private final boolean extended;
+
+        TableSet(long[] bits) {
+            super(bits);
+            byte[] low = new byte[Math.max(16, SPECIES.length())];
+            byte[] high = new byte[Math.max(16, SPECIES.length())];
+            byte[] lowExt = new byte[Math.max(16, SPECIES.length())];
+            byte[] highExt = new byte[Math.max(16, SPECIES.length())];
+            List<Integer> rows = new ArrayList<>();
+            for(int h = 0; h < 16; h++) {
+                int row = 0;
+                for(int l = 0; l < 16; l++) {
+                    if(contains(bits, (h << 4) | l)) {
+                        row |= 1 << l;
+                    }
+                }
+                if(row == 0) {
+                    continue;
+                }
+                int k = rows.indexOf(row);
+                if(k < 0) {
+                    k = rows.size();
+                    rows.add(row);
+                }
+                byte[] lt = k < 8 ? low : lowExt;
+                byte[] ht = k < 8 ? high : highExt;
+                ht[h] = (byte) (1 << (k & 7));
+                for(int l = 0; l < 16; l++) {
+                    if((row & (1 << l)) != 0) {
+                        lt[l] |= (byte) (1 << (k & 7));
+                    }
+                }
+            }
+            this.extended = rows.size() > 8;
+            this.lowTable = VECTOR ? ByteVector.fromArray(SPECIES, low, 0) : null;
+            this.highTable = VECTOR ? ByteVector.fromArray(SPECIES, high, 0) : null;
+            this.lowTableExt = VECTOR ? ByteVector.fromArray(SPECIES, lowExt, 0) : null;
+            this.highTableExt = VECTOR ? ByteVector.fromArray(SPECIES, highExt, 0) : null;
+        }
+
+        @Override
+        public VectorMask<Byte> match(ByteVector vector) {
+            if(!VECTOR || vector.species() != SPECIES) {
+                // tables are only prepared for the preferred species
+                boolean[] r = new boolean[vector.length()];
+                for(int i = 0; i < r.length; i++) {
+                    r[i] = match(vector.lane(i));
+                }
+                return VectorMask.fromArray(vector.species(), r, 0);
+            }
+            ByteVector lowIndex = vector.and((byte) 0x0F);
+            ByteVector highIndex = vector.lanewise(VectorOperators.LSHR, 4);
+            ByteVector r = lowIndex.selectFrom(lowTable).and(highIndex.selectFrom(highTable));
+            if(extended) {
+                r = r.or(lowIndex.selectFrom(lowTableExt).and(highIndex.selectFrom(highTableExt)));
+            }
+            return r.compare(VectorOperators.NE, (byte) 0);
+        }
+
+        @Override
+        long search(long startIndex, MemorySegment segment) {
+            final long end = segment.byteSize();
+            long index = startIndex;
+            if(!VECTOR) {
+                return bitmapSearch(index, segment);
+            }
+            for( ; index + SPECIES.length() <= end; index += SPECIES.length()) {
+                ByteVector vec = ByteVector.fromMemorySegment(SPECIES, segment, index, ByteOrder.nativeOrder());
+                int r = match(vec).firstTrue();
+                if(r < SPECIES.length()) {
+                    return index + r + Byte.BYTES;
+                }
+            }
+            return linearSearch(index, end, segment);
+        }
+    }
+}
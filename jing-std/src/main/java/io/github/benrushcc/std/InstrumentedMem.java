@@ -0,0 +1,163 @@
+package io.github.benrushcc.std;
+
+import io.github.benrushcc.std.jfr.NativeAllocationEvent;
+import io.github.benrushcc.std.jfr.OversizeAllocationEvent;
+
+import java.lang.foreign.MemorySegment;
+import java.util.concurrent.atomic.LongAdder;
+
+/// [Mem] decorator counting every native operation, the counters are always on and cost a LongAdder increment each,
+/// while JFR events are only committed when enabled in the running recording
+///
+/// Allocations larger than `jing.instrumentedMem.oversize` bytes are additionally counted and reported as oversize
+@SuppressWarnings("unused")
+public final class InstrumentedMem implements Mem {
+
+    private static final long DEFAULT_OVERSIZE_THRESHOLD = Long.getLong("jing.instrumentedMem.oversize", 1024L * 1024L);
+
+    public static InstrumentedMem of(Mem mem, String name) {
+        return new InstrumentedMem(mem, name, DEFAULT_OVERSIZE_THRESHOLD);
+    }
+
+    public static InstrumentedMem of(Mem mem, String name, long oversizeThreshold) {
+        if(oversizeThreshold <= 0L) {
+            throw new IllegalArgumentException("Oversize threshold must be greater than zero");
+        }
+        return new InstrumentedMem(mem, name, oversizeThreshold);
+    }
+
+    private final Mem mem;
+    private final String name;
+    private final long oversizeThreshold;
+    private final LongAdder allocations = new LongAdder();
+    private final LongAdder reallocations = new LongAdder();
+    private final LongAdder frees = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder oversizes = new LongAdder();
+    private final LongAdder requestedBytes = new LongAdder();
+
+    private InstrumentedMem(Mem m, String n, long threshold) {
+        mem = m;
+        name = n;
+        oversizeThreshold = threshold;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /// Number of allocateMemory and alignedAllocateMemory calls
+    public long allocations() {
+        return allocations.sum();
+    }
+
+    public long reallocations() {
+        return reallocations.sum();
+    }
+
+    /// Number of freeMemory and alignedFreeMemory calls
+    public long frees() {
+        return frees.sum();
+    }
+
+    /// Number of allocations or reallocations returning NULL
+    public long failures() {
+        return failures.sum();
+    }
+
+    public long oversizes() {
+        return oversizes.sum();
+    }
+
+    /// Total bytes requested by allocations and reallocations
+    public long requestedBytes() {
+        return requestedBytes.sum();
+    }
+
+    private void count(LongAdder counter, long size, MemorySegment result) {
+        counter.increment();
+        requestedBytes.add(size);
+        if(result.address() == 0L) {
+            failures.increment();
+        }
+        if(size > oversizeThreshold) {
+            oversizes.increment();
+            OversizeAllocationEvent event = new OversizeAllocationEvent();
+            if(event.shouldCommit()) {
+                event.allocator = name;
+                event.size = size;
+                event.threshold = oversizeThreshold;
+                event.commit();
+            }
+        }
+    }
+
+    private void commit(NativeAllocationEvent event, String operation, long size, long address) {
+        if(event.shouldCommit()) {
+            event.allocator = name;
+            event.operation = operation;
+            event.size = size;
+            event.address = address;
+            event.commit();
+        }
+    }
+
+    /// Segments freed by address alone are zero-length, their size is unknown rather than zero
+    private static long freedSize(MemorySegment seg) {
+        long size = seg.byteSize();
+        return size > 0L ? size : NativeAllocationEvent.UNKNOWN_SIZE;
+    }
+
+    @Override
+    public long alignmentBoundary() {
+        return mem.alignmentBoundary();
+    }
+
+    @Override
+    public MemorySegment allocateMemory(long size) {
+        NativeAllocationEvent event = new NativeAllocationEvent();
+        event.begin();
+        MemorySegment r = mem.allocateMemory(size);
+        commit(event, NativeAllocationEvent.ALLOCATE, size, r.address());
+        count(allocations, size, r);
+        return r;
+    }
+
+    @Override
+    public MemorySegment reallocMemory(MemorySegment seg, long newSize) {
+        NativeAllocationEvent event = new NativeAllocationEvent();
+        event.begin();
+        MemorySegment r = mem.reallocMemory(seg, newSize);
+        commit(event, NativeAllocationEvent.REALLOC, newSize, r.address());
+        count(reallocations, newSize, r);
+        return r;
+    }
+
+    @Override
+    public void freeMemory(MemorySegment seg) {
+        NativeAllocationEvent event = new NativeAllocationEvent();
+        event.begin();
+        mem.freeMemory(seg);
+        commit(event, NativeAllocationEvent.FREE, freedSize(seg), seg.address());
+        frees.increment();
+    }
+
+    @Override
+    public MemorySegment alignedAllocateMemory(long alignment, long size) {
+        NativeAllocationEvent event = new NativeAllocationEvent();
+        event.begin();
+        MemorySegment r = mem.alignedAllocateMemory(alignment, size);
+        commit(event, NativeAllocationEvent.ALLOCATE, size, r.address());
+        count(allocations, size, r);
+        return r;
+    }
+
+    @Override
+    public void alignedFreeMemory(MemorySegment seg) {
+        NativeAllocationEvent event = new NativeAllocationEvent();
+        event.begin();
+        mem.alignedFreeMemory(seg);
+        commit(event, NativeAllocationEvent.FREE, freedSize(seg), seg.address());
+        frees.increment();
+    }
+}
@@ -0,0 +1,127 @@
+package io.github.benrushcc.std;
+
+import io.github.benrushcc.common.Utils;
+
+import java.lang.ref.Cleaner;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/// Report native resources becoming unreachable without being closed, together with where they were allocated
+///
+/// `jing.leak.sampling` is the fraction of resources to be tracked, from 0 (disabled, the default) to 1 (all of them),
+/// each tracked resource records its top `jing.leak.frames` stack frames. When disabled, [#sample(Object, String)] is
+/// folded to null by the JIT, so untracked resources only pay for a null check on close. Tracked resources are native
+/// WriteBuffers, including pooled ones while they are handed out, direct Allocators and SharedBuffers, while
+/// [#track(Object, String)] tracks any other resource regardless of sampling
+@SuppressWarnings("unused")
+public final class LeakDetector {
+    private LeakDetector() {
+        Utils.unsupportedInstantiated();
+    }
+
+    private static final double SAMPLING = Math.clamp(Double.parseDouble(System.getProperty("jing.leak.sampling", "0")), 0d, 1d);
+
+    static final boolean ENABLED = SAMPLING > 0d;
+
+    private static final int FRAMES = Math.max(Integer.getInteger("jing.leak.frames", 8), 1);
+
+    private static final Supplier<Cleaner> CLEANER = StableValue.supplier(Cleaner::create);
+
+    private static final StackWalker WALKER = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+
+    private static final LongAdder TRACKED = new LongAdder();
+
+    private static final LongAdder LEAKED = new LongAdder();
+
+    /// Whether `jing.leak.sampling` is greater than zero
+    public static boolean enabled() {
+        return ENABLED;
+    }
+
+    /// Track the resource if sampled, return null otherwise
+    static Leak sample(Object resource, String type) {
+        return sample(resource, type, null);
+    }
+
+    static Leak sample(Object resource, String type, LongAdder counter) {
+        if(!ENABLED || (SAMPLING < 1d && ThreadLocalRandom.current().nextDouble() >= SAMPLING)) {
+            return null;
+        }
+        return track(resource, type, counter);
+    }
+
+    /// Always track the resource regardless of sampling, for native resources managed outside this library, the
+    /// returned Leak must be closed when the resource is properly released
+    public static Leak track(Object resource, String type) {
+        return track(resource, type, null);
+    }
+
+    /// Always track the resource, counting it in counter if it leaks
+    static Leak track(Object resource, String type, LongAdder counter) {
+        StackTraceElement[] frames = WALKER.walk(s -> s.dropWhile(f -> f.getDeclaringClass() == LeakDetector.class)
+                .limit(FRAMES)
+                .map(StackWalker.StackFrame::toStackTraceElement)
+                .toArray(StackTraceElement[]::new));
+        Report report = new Report(type, frames, counter);
+        Leak leak = new Leak(report, CLEANER.get().register(resource, report));
+        TRACKED.increment();
+        return leak;
+    }
+
+    /// Number of resources currently tracked and not yet closed
+    public static long tracked() {
+        return TRACKED.sum();
+    }
+
+    /// Number of tracked resources reported as leaked
+    public static long leaked() {
+        return LEAKED.sum();
+    }
+
+    /// Handle of a tracked resource
+    public static final class Leak {
+        private final Report report;
+        private final Cleaner.Cleanable cleanable;
+
+        private Leak(Report r, Cleaner.Cleanable c) {
+            report = r;
+            cleanable = c;
+        }
+
+        /// Mark the resource as properly closed
+        public void close() {
+            report.closed = true;
+            cleanable.clean();
+        }
+    }
+
+    /// Cleaner action, which must not reference the resource it tracks
+    private static final class Report implements Runnable {
+        private final String type;
+        private final StackTraceElement[] frames;
+        private final LongAdder counter;
+        private volatile boolean closed = false;
+
+        Report(String t, StackTraceElement[] f, LongAdder c) {
+            type = t;
+            frames = f;
+            counter = c;
+        }
+
+        @Override
+        public void run() {
+            TRACKED.decrement();
+            if(!closed) {
+                Throwable allocation = new Throwable(type + " allocated here");
+                allocation.setStackTrace(frames);
+                System.getLogger(LeakDetector.class.getName()).log(System.Logger.Level.WARNING, type + " leaked without being closed", allocation);
+                // counted after logging, so the report is already published once the leak is observed
+                LEAKED.increment();
+                if(counter != null) {
+                    counter.increment();
+                }
+            }
+        }
+    }
+}
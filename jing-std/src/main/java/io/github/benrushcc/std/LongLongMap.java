@@ -0,0 +1,366 @@
+package io.github.benrushcc.std;
+
+import java.lang.foreign.MemorySegment;
+
+/// Open addressing long to long hash map, whose slots live in memory allocated from a [Mem], so large tables add
+/// nothing to GC work. Not thread-safe, and must not be used after being closed
+///
+/// Slots are probed linearly and removals shift the following entries backward instead of leaving tombstones. Growing
+/// is incremental, the old table is kept after a resize and every later put or remove migrates at least
+/// `jing.longMap.migrate.step` of its slots into the new table, extended to the end of the current cluster, so no single
+/// insert would rehash the whole table and lookups in the old table never probe into its migrated part. Key 0 marks
+/// empty slots, so it's stored outside the table
+@SuppressWarnings("unused")
+public final class LongLongMap implements AutoCloseable {
+
+    private static final int MIGRATE_STEP = Math.max(Integer.getInteger("jing.longMap.migrate.step", 64), 1);
+
+    private static final long MIN_CAPACITY = 16L;
+
+    private static final long SLOT_SIZE = 16L;
+
+    public static LongLongMap of(Mem mem) {
+        return new LongLongMap(mem, MIN_CAPACITY);
+    }
+
+    /// Create a map which could hold expectedSize entries without resizing
+    public static LongLongMap of(Mem mem, long expectedSize) {
+        if(expectedSize < 0L) {
+            throw new IllegalArgumentException("Expected size must not be negative");
+        }
+        long required = Math.addExact(expectedSize, expectedSize / 3L) + 1L;
+        long capacity = Math.max(MIN_CAPACITY, Long.highestOneBit(required - 1L) << 1);
+        if(capacity <= 0L) {
+            throw new ArithmeticException("Capacity overflow");
+        }
+        return new LongLongMap(mem, capacity);
+    }
+
+    /// Receive entries in [#forEach(EntryConsumer)]
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, long value);
+    }
+
+    private final Mem mem;
+    private MemorySegment table;
+    private long mask;
+    private long threshold;
+    /// Number of entries in table
+    private long used = 0L;
+    /// Table being migrated, NULL when no migration is in progress
+    private MemorySegment old = MemorySegment.NULL;
+    private long oldMask = 0L;
+    /// Migration starts from an empty slot of the old table and every step stops before an empty slot, so no cluster
+    /// straddles the migration frontier
+    private long oldStart = 0L;
+    private long migrated = 0L;
+    private long size = 0L;
+    private boolean hasZero = false;
+    private long zeroValue = 0L;
+    private boolean closed = false;
+
+    private LongLongMap(Mem m, long capacity) {
+        mem = m;
+        table = allocate(capacity);
+        mask = capacity - 1L;
+        threshold = capacity - (capacity >>> 2);
+    }
+
+    private MemorySegment allocate(long capacity) {
+        MemorySegment m = mem.allocateMemory(Math.multiplyExact(capacity, SLOT_SIZE));
+        if(m.address() == 0L) {
+            throw new OutOfMemoryError();
+        }
+        m.fill((byte) 0);
+        return m;
+    }
+
+    private static long index(long key, long mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (h ^ (h >>> 32)) & mask;
+    }
+
+    private static long find(MemorySegment t, long mask, long key) {
+        long i = index(key, mask);
+        for( ; ; ) {
+            long k = MemAccess.getLong(t, i * SLOT_SIZE);
+            if(k == key) {
+                return i;
+            } else if(k == 0L) {
+                return -1L;
+            }
+            i = (i + 1L) & mask;
+        }
+    }
+
+    private boolean migrating() {
+        return old.address() != 0L;
+    }
+
+    private boolean isMigrated(long i) {
+        return ((i - oldStart) & oldMask) < migrated;
+    }
+
+    /// Probe the old table, clusters are migrated as a whole, so a key whose home slot was migrated is never there
+    private long findOld(long key) {
+        long i = index(key, oldMask);
+        if(isMigrated(i)) {
+            return -1L;
+        }
+        for( ; ; ) {
+            long k = MemAccess.getLong(old, i * SLOT_SIZE);
+            if(k == key) {
+                return i;
+            } else if(k == 0L) {
+                return -1L;
+            }
+            i = (i + 1L) & oldMask;
+        }
+    }
+
+    /// Insert a key known to be absent into table
+    private void insert(long key, long value) {
+        long i = index(key, mask);
+        while (MemAccess.getLong(table, i * SLOT_SIZE) != 0L) {
+            i = (i + 1L) & mask;
+        }
+        MemAccess.setLong(table, i * SLOT_SIZE, key);
+        MemAccess.setLong(table, i * SLOT_SIZE + Long.BYTES, value);
+        used++;
+    }
+
+    /// Remove slot i with backward shifting, entries after it move into the hole if it doesn't skip their home slot
+    private static void delete(MemorySegment t, long mask, long i) {
+        long j = i;
+        for( ; ; ) {
+            j = (j + 1L) & mask;
+            long k = MemAccess.getLong(t, j * SLOT_SIZE);
+            if(k == 0L) {
+                break;
+            }
+            long h = index(k, mask);
+            if(((j - h) & mask) >= ((j - i) & mask)) {
+                MemAccess.setLong(t, i * SLOT_SIZE, k);
+                MemAccess.setLong(t, i * SLOT_SIZE + Long.BYTES, MemAccess.getLong(t, j * SLOT_SIZE + Long.BYTES));
+                i = j;
+            }
+        }
+        MemAccess.setLong(t, i * SLOT_SIZE, 0L);
+    }
+
+    /// Migrate at least MIGRATE_STEP slots, continuing until the next slot to migrate is empty
+    private void step() {
+        long end = Math.min(migrated + MIGRATE_STEP, oldMask + 1L);
+        while (migrated <= oldMask) {
+            long offset = ((oldStart + migrated) & oldMask) * SLOT_SIZE;
+            long k = MemAccess.getLong(old, offset);
+            if(k != 0L) {
+                insert(k, MemAccess.getLong(old, offset + Long.BYTES));
+                MemAccess.setLong(old, offset, 0L);
+            } else if(migrated >= end) {
+                break;
+            }
+            migrated++;
+        }
+        if(migrated > oldMask) {
+            mem.freeMemory(old);
+            old = MemorySegment.NULL;
+        }
+    }
+
+    private void grow() {
+        while (migrating()) {
+            step();
+        }
+        if(used <= threshold) {
+            return ;
+        }
+        long capacity = (mask + 1L) << 1;
+        if(capacity <= 0L) {
+            throw new ArithmeticException("Capacity overflow");
+        }
+        old = table;
+        oldMask = mask;
+        oldStart = 0L;
+        while (MemAccess.getLong(old, oldStart * SLOT_SIZE) != 0L) {
+            oldStart++;
+        }
+        migrated = 0L;
+        table = allocate(capacity);
+        mask = capacity - 1L;
+        threshold = capacity - (capacity >>> 2);
+        used = 0L;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0L;
+    }
+
+    /// Number of slots of the current table
+    public long capacity() {
+        return mask + 1L;
+    }
+
+    public boolean containsKey(long key) {
+        if(key == 0L) {
+            return hasZero;
+        }
+        return find(table, mask, key) >= 0L || (migrating() && findOld(key) >= 0L);
+    }
+
+    public long get(long key, long defaultValue) {
+        if(key == 0L) {
+            return hasZero ? zeroValue : defaultValue;
+        }
+        long i = find(table, mask, key);
+        if(i >= 0L) {
+            return MemAccess.getLong(table, i * SLOT_SIZE + Long.BYTES);
+        }
+        if(migrating()) {
+            i = findOld(key);
+            if(i >= 0L) {
+                return MemAccess.getLong(old, i * SLOT_SIZE + Long.BYTES);
+            }
+        }
+        return defaultValue;
+    }
+
+    /// Associate value with key, return true if the key was absent
+    public boolean put(long key, long value) {
+        if(key == 0L) {
+            boolean absent = !hasZero;
+            if(absent) {
+                hasZero = true;
+                size++;
+            }
+            zeroValue = value;
+            return absent;
+        }
+        if(migrating()) {
+            step();
+            if(migrating()) {
+                long i = findOld(key);
+                if(i >= 0L) {
+                    MemAccess.setLong(old, i * SLOT_SIZE + Long.BYTES, value);
+                    return false;
+                }
+            }
+        }
+        long i = index(key, mask);
+        for( ; ; ) {
+            long offset = i * SLOT_SIZE;
+            long k = MemAccess.getLong(table, offset);
+            if(k == key) {
+                MemAccess.setLong(table, offset + Long.BYTES, value);
+                return false;
+            } else if(k == 0L) {
+                MemAccess.setLong(table, offset, key);
+                MemAccess.setLong(table, offset + Long.BYTES, value);
+                used++;
+                size++;
+                if(used > threshold) {
+                    grow();
+                }
+                return true;
+            }
+            i = (i + 1L) & mask;
+        }
+    }
+
+    /// Remove the mapping of key, return true if it existed
+    public boolean remove(long key) {
+        if(key == 0L) {
+            boolean present = hasZero;
+            if(present) {
+                hasZero = false;
+                zeroValue = 0L;
+                size--;
+            }
+            return present;
+        }
+        if(migrating()) {
+            step();
+        }
+        long i = find(table, mask, key);
+        if(i >= 0L) {
+            delete(table, mask, i);
+            used--;
+            size--;
+            return true;
+        }
+        if(migrating()) {
+            i = findOld(key);
+            if(i >= 0L) {
+                // shifting inside a half migrated table is unsafe, so the rest of the cluster is migrated at once
+                MemAccess.setLong(old, i * SLOT_SIZE, 0L);
+                size--;
+                for(long j = (i + 1L) & oldMask; ; j = (j + 1L) & oldMask) {
+                    long offset = j * SLOT_SIZE;
+                    long k = MemAccess.getLong(old, offset);
+                    if(k == 0L) {
+                        break;
+                    }
+                    insert(k, MemAccess.getLong(old, offset + Long.BYTES));
+                    MemAccess.setLong(old, offset, 0L);
+                }
+                if(used > threshold) {
+                    grow();
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void forEach(EntryConsumer consumer) {
+        if(hasZero) {
+            consumer.accept(0L, zeroValue);
+        }
+        forEach(table, mask, consumer);
+        if(migrating()) {
+            forEach(old, oldMask, consumer);
+        }
+    }
+
+    private static void forEach(MemorySegment t, long mask, EntryConsumer consumer) {
+        for(long i = 0L; i <= mask; i++) {
+            long k = MemAccess.getLong(t, i * SLOT_SIZE);
+            if(k != 0L) {
+                consumer.accept(k, MemAccess.getLong(t, i * SLOT_SIZE + Long.BYTES));
+            }
+        }
+    }
+
+    /// Remove all the entries, keeping the current capacity
+    public void clear() {
+        if(migrating()) {
+            mem.freeMemory(old);
+            old = MemorySegment.NULL;
+        }
+        table.fill((byte) 0);
+        used = 0L;
+        size = 0L;
+        hasZero = false;
+        zeroValue = 0L;
+    }
+
+    @Override
+    public void close() {
+        if(closed) {
+            return ;
+        }
+        closed = true;
+        if(migrating()) {
+            mem.freeMemory(old);
+            old = MemorySegment.NULL;
+        }
+        mem.freeMemory(table);
+        table = MemorySegment.NULL;
+        size = 0L;
+    }
+}
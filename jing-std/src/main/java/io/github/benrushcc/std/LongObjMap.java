@@ -0,0 +1,144 @@
+package io.github.benrushcc.std;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/// Long to object hash map without boxing keys, built on a [LongLongMap] mapping keys to value slots
+///
+/// Values are kept in fixed-size pages, so growing never copies the existing values, freed slots are recycled before
+/// new ones are taken. Null values are not permitted. Not thread-safe, and must not be used after being closed
+@SuppressWarnings("unused")
+public final class LongObjMap<V> implements AutoCloseable {
+
+    private static final int PAGE_SHIFT = 12;
+
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    public static <V> LongObjMap<V> of(Mem mem) {
+        return new LongObjMap<>(LongLongMap.of(mem));
+    }
+
+    /// Create a map which could hold expectedSize entries without resizing
+    public static <V> LongObjMap<V> of(Mem mem, long expectedSize) {
+        return new LongObjMap<>(LongLongMap.of(mem, expectedSize));
+    }
+
+    /// Receive entries in [#forEach(EntryConsumer)]
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    private final LongLongMap slots;
+    private Object[][] pages = new Object[1][];
+    private int next = 0;
+    private int[] free = new int[16];
+    private int freeCount = 0;
+
+    private LongObjMap(LongLongMap m) {
+        slots = m;
+    }
+
+    private int acquire() {
+        if(freeCount > 0) {
+            return free[--freeCount];
+        }
+        int slot = next;
+        int page = slot >>> PAGE_SHIFT;
+        if(page == pages.length) {
+            pages = Arrays.copyOf(pages, Math.multiplyExact(page, 2));
+        }
+        if(pages[page] == null) {
+            pages[page] = new Object[PAGE_SIZE];
+        }
+        next = Math.addExact(slot, 1);
+        return slot;
+    }
+
+    private void release(int slot) {
+        if(freeCount == free.length) {
+            free = Arrays.copyOf(free, Math.multiplyExact(freeCount, 2));
+        }
+        free[freeCount++] = slot;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(long slot) {
+        return (V) pages[(int) (slot >>> PAGE_SHIFT)][(int) (slot & PAGE_MASK)];
+    }
+
+    private void setValue(long slot, Object value) {
+        pages[(int) (slot >>> PAGE_SHIFT)][(int) (slot & PAGE_MASK)] = value;
+    }
+
+    public long size() {
+        return slots.size();
+    }
+
+    public boolean isEmpty() {
+        return slots.isEmpty();
+    }
+
+    public boolean containsKey(long key) {
+        return slots.containsKey(key);
+    }
+
+    public V get(long key) {
+        long slot = slots.get(key, -1L);
+        return slot < 0L ? null : value(slot);
+    }
+
+    /// Associate value with key, return the previous value or null if the key was absent
+    public V put(long key, V value) {
+        Objects.requireNonNull(value);
+        long slot = slots.get(key, -1L);
+        if(slot >= 0L) {
+            V previous = value(slot);
+            setValue(slot, value);
+            return previous;
+        }
+        int s = acquire();
+        setValue(s, value);
+        slots.put(key, s);
+        return null;
+    }
+
+    /// Remove the mapping of key, return the removed value or null if the key was absent
+    public V remove(long key) {
+        long slot = slots.get(key, -1L);
+        if(slot < 0L) {
+            return null;
+        }
+        slots.remove(key);
+        V previous = value(slot);
+        setValue(slot, null);
+        release((int) slot);
+        return previous;
+    }
+
+    public void forEach(EntryConsumer<? super V> consumer) {
+        slots.forEach((key, slot) -> consumer.accept(key, value(slot)));
+    }
+
+    /// Remove all the entries, keeping the allocated pages
+    public void clear() {
+        slots.clear();
+        for (Object[] page : pages) {
+            if(page != null) {
+                Arrays.fill(page, null);
+            }
+        }
+        next = 0;
+        freeCount = 0;
+    }
+
+    @Override
+    public void close() {
+        slots.close();
+        pages = new Object[1][];
+        next = 0;
+        freeCount = 0;
+    }
+}
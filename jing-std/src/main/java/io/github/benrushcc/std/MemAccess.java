@@ -36,8 +36,35 @@ public final class MemAccess {
     private static final VarHandle DOUBLE_OPPOSITE_HANDLE = ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(OPPOSITE_BYTE_ORDER).varHandle().withInvokeExactBehavior();
     private static final VarHandle ADDRESS_OPPOSITE_HANDLE = ValueLayout.ADDRESS_UNALIGNED.withOrder(OPPOSITE_BYTE_ORDER).varHandle().withInvokeExactBehavior();
 
+    private static final ValueLayout.OfShort SHORT_OPPOSITE_LAYOUT = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(OPPOSITE_BYTE_ORDER);
+    private static final ValueLayout.OfInt INT_OPPOSITE_LAYOUT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(OPPOSITE_BYTE_ORDER);
+    private static final ValueLayout.OfLong LONG_OPPOSITE_LAYOUT = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(OPPOSITE_BYTE_ORDER);
+    private static final ValueLayout.OfFloat FLOAT_OPPOSITE_LAYOUT = ValueLayout.JAVA_FLOAT_UNALIGNED.withOrder(OPPOSITE_BYTE_ORDER);
+    private static final ValueLayout.OfDouble DOUBLE_OPPOSITE_LAYOUT = ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(OPPOSITE_BYTE_ORDER);
+
     private static final SysMemLib SYS_MEM_LIB = LibContext.acquire(SysMemLib.class);
 
+    /// Unaligned layouts in the given byte order, used for bulk copying with byte swapping
+    static ValueLayout.OfShort shortLayout(ByteOrder order) {
+        return order == ByteOrder.nativeOrder() ? ValueLayout.JAVA_SHORT_UNALIGNED : SHORT_OPPOSITE_LAYOUT;
+    }
+
+    static ValueLayout.OfInt intLayout(ByteOrder order) {
+        return order == ByteOrder.nativeOrder() ? ValueLayout.JAVA_INT_UNALIGNED : INT_OPPOSITE_LAYOUT;
+    }
+
+    static ValueLayout.OfLong longLayout(ByteOrder order) {
+        return order == ByteOrder.nativeOrder() ? ValueLayout.JAVA_LONG_UNALIGNED : LONG_OPPOSITE_LAYOUT;
+    }
+
+    static ValueLayout.OfFloat floatLayout(ByteOrder order) {
+        return order == ByteOrder.nativeOrder() ? ValueLayout.JAVA_FLOAT_UNALIGNED : FLOAT_OPPOSITE_LAYOUT;
+    }
+
+    static ValueLayout.OfDouble doubleLayout(ByteOrder order) {
+        return order == ByteOrder.nativeOrder() ? ValueLayout.JAVA_DOUBLE_UNALIGNED : DOUBLE_OPPOSITE_LAYOUT;
+    }
+
     public static byte getByte(MemorySegment m, long offset) {
         return (byte) BYTE_HANDLE.get(m, offset);
     }
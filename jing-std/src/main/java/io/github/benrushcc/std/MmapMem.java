@@ -0,0 +1,72 @@
+package io.github.benrushcc.std;
+
+import io.github.benrushcc.common.Utils;
+import io.github.benrushcc.lib.LibContext;
+import io.github.benrushcc.std.lib.MmapMemLib;
+
+import java.lang.foreign.MemorySegment;
+import java.util.function.Supplier;
+
+/// [Mem] mapping every allocation directly from the OS, intended for multi-megabyte buffers
+///
+/// Mappings are advised to be backed by transparent huge pages when `jing.mmapMem.hugePage` is enabled (the default),
+/// which is silently ignored when THP is disabled or unsupported, and are prefaulted when `jing.mmapMem.populate` is
+/// enabled. Huge page mappings on Linux start their data at a huge page boundary and span whole huge pages, with the
+/// header kept in a separate leading page, so THP could back the entire buffer. Reallocations use mremap on Linux, so
+/// growing a huge buffer never copies its content, and keep the huge page alignment when the mapping moves. Each
+/// allocation occupies whole pages, or whole huge pages, small allocations should go through other Mem implementations
+@SuppressWarnings("unused")
+public final class MmapMem {
+    private MmapMem() {
+        Utils.unsupportedInstantiated();
+    }
+
+    private static final boolean HUGE_PAGE = Boolean.parseBoolean(System.getProperty("jing.mmapMem.hugePage", "true"));
+
+    private static final boolean POPULATE = Boolean.getBoolean("jing.mmapMem.populate");
+
+    private static final Supplier<MmapMemLib> LIB_SUPPLIER = StableValue.supplier(() -> LibContext.acquire(MmapMemLib.class));
+
+    private static final Supplier<Mem> MEM_SUPPLIER = StableValue.supplier(() -> of(HUGE_PAGE, POPULATE));
+
+    public static Mem instance() {
+        return MEM_SUPPLIER.get();
+    }
+
+    public static Mem of(boolean hugePage, boolean populate) {
+        MmapMemLib lib = LIB_SUPPLIER.get();
+        int flags = (hugePage ? MmapMemLib.HUGE_PAGE : 0) | (populate ? MmapMemLib.POPULATE : 0);
+        return new Mem() {
+            @Override
+            public long alignmentBoundary() {
+                return 64L;
+            }
+
+            @Override
+            public MemorySegment allocateMemory(long size) {
+                return lib.mmapAlloc(size, 0L, flags).reinterpret(size);
+            }
+
+            @Override
+            public MemorySegment reallocMemory(MemorySegment seg, long newSize) {
+                return lib.mmapRealloc(seg, newSize, flags).reinterpret(newSize);
+            }
+
+            @Override
+            public void freeMemory(MemorySegment seg) {
+                lib.mmapFree(seg);
+            }
+
+            /// Alignments larger than the page size are not supported, NULL would be returned
+            @Override
+            public MemorySegment alignedAllocateMemory(long alignment, long size) {
+                return lib.mmapAlloc(size, alignment, flags).reinterpret(size);
+            }
+
+            @Override
+            public void alignedFreeMemory(MemorySegment seg) {
+                lib.mmapFree(seg);
+            }
+        };
+    }
+}
@@ -2,21 +2,31 @@ package io.github.benrushcc.std;
 
 import jdk.incubator.vector.ByteVector;
 import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
 
+import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
 import java.lang.foreign.ValueLayout;
+import java.lang.reflect.Array;
 import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 
 @SuppressWarnings("Duplicates")
-public sealed abstract class ReadBuffer permits ReadBuffer.SingleReadBuffer, ReadBuffer.MultipleReadBuffer {
+public sealed abstract class ReadBuffer implements AutoCloseable permits ReadBuffer.SingleReadBuffer, ReadBuffer.MultipleReadBuffer {
 
     public static ReadBuffer as(MemorySegment segment) {
         return new SingleReadBuffer(segment);
     }
 
+    /// Create an empty ReadBuffer which could be appended with segments afterwards
+    public static StreamingReadBuffer streaming() {
+        return new StreamingReadBuffer();
+    }
+
     public static ReadBuffer as(List<MemorySegment> segments) {
         Objects.requireNonNull(segments);
         if(segments.isEmpty()) {
@@ -28,10 +38,61 @@ public sealed abstract class ReadBuffer permits ReadBuffer.SingleReadBuffer, Rea
         }
     }
 
+    /// Create a ReadBuffer owning the native segments, once closed the segments would be invalidated and then release
+    /// would be invoked, so slices taken from the buffer could never access freed memory, a confined Arena is used
+    /// unless shared, as closing a shared one needs a handshake with every thread
+    static ReadBuffer owned(List<MemorySegment> segments, Runnable release, boolean shared) {
+        Arena arena = shared ? Arena.ofShared() : Arena.ofConfined();
+        List<MemorySegment> scoped = new ArrayList<>(segments.size());
+        for (MemorySegment m : segments) {
+            scoped.add(m.reinterpret(arena, null));
+        }
+        ReadBuffer r = as(scoped);
+        r.arena = arena;
+        r.release = release;
+        return r;
+    }
+
+    private Arena arena;
+    private Runnable release;
+
+    /// Release the memory owned by this buffer, buffers not created by WriteBuffer.toReadBuffer() own nothing
+    @Override
+    public void close() {
+        Arena a = arena;
+        if(a != null) {
+            arena = null;
+            a.close();
+            release.run();
+            release = null;
+        }
+    }
+
     public abstract long readIndex();
 
     public abstract void setIndex(long index);
 
+    /// Get the byte at the absolute index without moving readIndex
+    public abstract byte getByte(long index);
+
+    public abstract short getShort(long index, ByteOrder byteOrder);
+
+    public short getShort(long index) {
+        return getShort(index, ByteOrder.nativeOrder());
+    }
+
+    public abstract int getInt(long index, ByteOrder byteOrder);
+
+    public int getInt(long index) {
+        return getInt(index, ByteOrder.nativeOrder());
+    }
+
+    public abstract long getLong(long index, ByteOrder byteOrder);
+
+    public long getLong(long index) {
+        return getLong(index, ByteOrder.nativeOrder());
+    }
+
     public abstract long available();
 
     public abstract long size();
@@ -76,12 +137,186 @@ public sealed abstract class ReadBuffer permits ReadBuffer.SingleReadBuffer, Rea
         return readDouble(ByteOrder.nativeOrder());
     }
 
+    public void readShorts(short[] dst, int off, int len, ByteOrder byteOrder) {
+        readArray(dst, MemAccess.shortLayout(byteOrder), off, len);
+    }
+
+    public void readShorts(short[] dst, int off, int len) {
+        readShorts(dst, off, len, ByteOrder.nativeOrder());
+    }
+
+    public void readInts(int[] dst, int off, int len, ByteOrder byteOrder) {
+        readArray(dst, MemAccess.intLayout(byteOrder), off, len);
+    }
+
+    public void readInts(int[] dst, int off, int len) {
+        readInts(dst, off, len, ByteOrder.nativeOrder());
+    }
+
+    public void readLongs(long[] dst, int off, int len, ByteOrder byteOrder) {
+        readArray(dst, MemAccess.longLayout(byteOrder), off, len);
+    }
+
+    public void readLongs(long[] dst, int off, int len) {
+        readLongs(dst, off, len, ByteOrder.nativeOrder());
+    }
+
+    public void readFloats(float[] dst, int off, int len, ByteOrder byteOrder) {
+        readArray(dst, MemAccess.floatLayout(byteOrder), off, len);
+    }
+
+    public void readFloats(float[] dst, int off, int len) {
+        readFloats(dst, off, len, ByteOrder.nativeOrder());
+    }
+
+    public void readDoubles(double[] dst, int off, int len, ByteOrder byteOrder) {
+        readArray(dst, MemAccess.doubleLayout(byteOrder), off, len);
+    }
+
+    public void readDoubles(double[] dst, int off, int len) {
+        readDoubles(dst, off, len, ByteOrder.nativeOrder());
+    }
+
+    /// Copy len elements into the primitive array starting from off, swapping bytes if the layout order is not native
+    abstract void readArray(Object dst, ValueLayout layout, int off, int len);
+
+    /// Read an unsigned varint, bits beyond 32 are truncated just like protobuf does for int32
+    public int readVarInt() {
+        return (int) readVarLong();
+    }
+
+    /// Read an unsigned varint of at most 10 bytes
+    public abstract long readVarLong();
+
+    public int readZigZagInt() {
+        int v = readVarInt();
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    public long readZigZagLong() {
+        long v = readVarLong();
+        return (v >>> 1) ^ -(v & 1L);
+    }
+
+    /// Read a frame prefixed with its varint length as a child ReadBuffer, return null if the frame is incomplete, and
+    /// readIndex would stay unchanged, a length prefix overflowing a non-negative long is rejected as malformed
+    public ReadBuffer readLengthPrefixed() {
+        long index = readIndex();
+        long len = 0L;
+        for(int shift = 0; ; shift += 7) {
+            if(index >= size()) {
+                return null;
+            } else if(shift > 63) {
+                throw new IllegalArgumentException("Malformed varint");
+            }
+            byte b = getByte(index++);
+            len |= (b & 0x7FL) << shift;
+            if(b >= 0) {
+                if(shift == 63 && b > 1) {
+                    throw new IllegalArgumentException("Malformed varint");
+                }
+                break;
+            }
+        }
+        if(len < 0L) {
+            throw new IllegalArgumentException("Malformed varint");
+        } else if(size() - index < len) {
+            return null;
+        }
+        setIndex(index);
+        return readSlice(len);
+    }
+
+    /// Masks of the payload bits of a varint with n bytes, indexed by n
+    private static final long[] VAR_MASKS = new long[Long.BYTES + 1];
+
+    static {
+        for(int n = 1; n <= Long.BYTES; n++) {
+            VAR_MASKS[n] = 0x7F7F7F7F7F7F7F7FL >>> ((Long.BYTES - n) << 3);
+        }
+    }
+
+    /// Decode a varint of no more than 8 bytes from a little-endian word, returning -1 for the length if the varint is
+    /// longer than the word, or the length of the varint otherwise
+    private static int varLength(long word) {
+        long stop = ~word & 0x8080808080808080L;
+        return stop == 0L ? -1 : (Long.numberOfTrailingZeros(stop) >>> 3) + 1;
+    }
+
+    private static long varValue(long word, int n) {
+        return Long.compress(word, VAR_MASKS[n]);
+    }
+
+    /// Decode the varint byte by byte, used near the end of segments or for varints longer than 8 bytes
+    final long slowVarLong() {
+        long r = 0L;
+        for(int shift = 0; shift < 64; shift += 7) {
+            byte b = readByte();
+            r |= (b & 0x7FL) << shift;
+            if(b >= 0) {
+                if(shift == 63 && b > 1) {
+                    break;
+                }
+                return r;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    /// Read length bytes as a UTF-8 string
+    public abstract String readUtf8(long length);
+
+    /// Read bytes until the delimiter as a UTF-8 string, readIndex would be moved after the delimiter,
+    /// return null if the delimiter was not found, and readIndex would stay unchanged
+    public abstract String readUtf8Until(byte delimiter);
+
     public abstract long search(byte b);
 
     public abstract long search(ByteMatcher matcher);
 
     public abstract long vectorSearch(ByteVectorMatcher matcher);
 
+    /// Search for a multi-byte sequence, readIndex would be moved after the sequence if found
+    public long search(byte[] needle) {
+        return search(MemorySegment.ofArray(needle));
+    }
+
+    public abstract long search(MemorySegment needle);
+
+    /// Read len bytes as a child ReadBuffer sharing the memory of this one, readIndex would be moved after the slice
+    public abstract ReadBuffer readSlice(long len);
+
+    /// Read len bytes as a read-only view if they are contiguous in memory, otherwise return null and readIndex would
+    /// stay unchanged
+    public abstract MemorySegment readSegment(long len);
+
+    /// Peek the next len bytes as a single segment without moving readIndex, which would be a view if they are
+    /// contiguous in memory, or joined into a scratch segment that is only valid until the next call on this buffer
+    public abstract MemorySegment contiguous(long len);
+
+    /// Move readIndex forward by len bytes
+    public abstract void skip(long len);
+
+    private static final MemorySegment EMPTY = MemorySegment.ofArray(new byte[0]).asReadOnly();
+
+    /// Scratch buffers larger than this would not be retained
+    private static final int SCRATCH_LIMIT = 8192;
+
+    private byte[] scratch;
+
+    /// Fetch a reusable byte array holding at least len bytes
+    byte[] scratch(int len) {
+        byte[] r = scratch;
+        if(r != null && r.length >= len) {
+            return r;
+        }
+        r = new byte[Math.max(len, 64)];
+        if(len <= SCRATCH_LIMIT) {
+            scratch = r;
+        }
+        return r;
+    }
+
     private static long compileSwarPattern(byte b) {
         long pattern = b & 0xFFL;
         return pattern
@@ -94,26 +329,24 @@ public sealed abstract class ReadBuffer permits ReadBuffer.SingleReadBuffer, Rea
                 | (pattern << 56);
     }
 
+    /// Data must be loaded in little-endian order, borrows only propagate towards higher bytes so only the lowest
+    /// flagged byte is guaranteed to be a real match
     private static int swarCheck(long data, long pattern) {
         long mask = data ^ pattern; // this single line is the major cost that we are about 10% slower than the JDK version
         long match = (mask - 0x0101010101010101L) & ~mask & 0x8080808080808080L;
-        ByteOrder o = ByteOrder.nativeOrder();
-        if(o == ByteOrder.BIG_ENDIAN) {
-            return Long.numberOfLeadingZeros(match) >>> 3;
-        }else if(o == ByteOrder.LITTLE_ENDIAN) {
-            return Long.numberOfTrailingZeros(match) >>> 3;
-        }else {
-            throw new RuntimeException("unreached");
-        }
+        return Long.numberOfTrailingZeros(match) >>> 3;
     }
 
     private static long linearSearch(long startIndex, MemorySegment segment, ByteMatcher matcher) {
+        if(matcher instanceof ByteMatchers.ByteSet set) {
+            return set.search(startIndex, segment);
+        }
         final int start = Math.toIntExact(startIndex);
         final int end = Math.toIntExact(segment.byteSize());
         for(int i = start; i < end; i++) {
             byte b = MemAccess.getByte(segment, i);
             if(matcher.match(b)) {
-                return startIndex + i + Byte.BYTES;
+                return (long) i + Byte.BYTES;
             }
         }
         return -1L;
@@ -128,7 +361,7 @@ public sealed abstract class ReadBuffer permits ReadBuffer.SingleReadBuffer, Rea
             return linearSearch(startIndex, segment, target -> target == b);
         }
         // check the first part
-        int r = swarCheck(MemAccess.getLong(segment, start), pattern);
+        int r = swarCheck(MemAccess.getLong(segment, start, ByteOrder.LITTLE_ENDIAN), pattern);
         if(r < Long.BYTES) {
             return startIndex + r + Byte.BYTES;
         }
@@ -136,30 +369,157 @@ public sealed abstract class ReadBuffer permits ReadBuffer.SingleReadBuffer, Rea
         int index = Math.toIntExact(Long.BYTES - ((segment.address() + start) & (Long.BYTES - 1)) + start);
         int tail = Math.toIntExact(end - Long.BYTES);
         for( ; index <= tail; index += Long.BYTES) {
-            r = swarCheck(MemAccess.getLong(segment, index), pattern);
+            r = swarCheck(MemAccess.getLong(segment, index, ByteOrder.LITTLE_ENDIAN), pattern);
             if(r < Long.BYTES) {
-                return startIndex + index + r + Byte.BYTES;
+                return (long) index + r + Byte.BYTES;
             }
         }
         // check the tail part
         if(index < end) {
-            r = swarCheck(MemAccess.getLong(segment, tail), pattern);
+            r = swarCheck(MemAccess.getLong(segment, tail, ByteOrder.LITTLE_ENDIAN), pattern);
             if(r < Long.BYTES) {
-                return startIndex + index + r + Byte.BYTES;
+                return (long) tail + r + Byte.BYTES;
             }
         }
         return -1L;
     }
 
+    /// Remaining length from which ByteVector would be used for single byte search, SWAR below it
+    private static final long VECTOR_THRESHOLD;
+
+    /// Remaining length from which native memchr would be used for single byte search on native segments
+    private static final long MEMCHR_THRESHOLD;
+
+    static {
+        long[] calibrated = Boolean.getBoolean("jing.search.calibrate") ? calibrate() : new long[]{64L, 2048L};
+        VECTOR_THRESHOLD = Long.getLong("jing.search.vector.threshold", calibrated[0]);
+        MEMCHR_THRESHOLD = Long.getLong("jing.search.memchr.threshold", calibrated[1]);
+    }
+
+    /// Measure the kernels against a native segment without any match, finding the smallest lengths where ByteVector
+    /// beats SWAR and where memchr beats both of them
+    private static long[] calibrate() {
+        final int max = 1 << 16;
+        long vectorThreshold = Long.MAX_VALUE;
+        long memchrThreshold = Long.MAX_VALUE;
+        try(Arena arena = Arena.ofConfined()) {
+            MemorySegment m = arena.allocate(max, Long.BYTES);
+            for(int round = 0; round < 2; round++) {
+                // the first round only warms up the kernels
+                for(int len = 16; len <= max; len <<= 1) {
+                    MemorySegment target = m.asSlice(0L, len);
+                    int iterations = Math.max((1 << 22) / len, 16);
+                    long swar = measure(target, iterations, 0);
+                    long vector = measure(target, iterations, 1);
+                    long memchr = measure(target, iterations, 2);
+                    if(round == 1) {
+                        if(vector <= swar) {
+                            vectorThreshold = Math.min(vectorThreshold, len);
+                        }
+                        if(memchr <= Math.min(swar, vector)) {
+                            memchrThreshold = Math.min(memchrThreshold, len);
+                        }
+                    }
+                }
+            }
+        }
+        return new long[]{vectorThreshold, memchrThreshold};
+    }
+
+    private static long measure(MemorySegment segment, int iterations, int kernel) {
+        long start = System.nanoTime();
+        long sink = 0L;
+        for(int i = 0; i < iterations; i++) {
+            sink += switch (kernel) {
+                case 0 -> swarSearch(0L, segment, (byte) 1);
+                case 1 -> vectorSearch(0L, segment, (byte) 1);
+                default -> memchrSearch(0L, segment, (byte) 1);
+            };
+        }
+        long elapsed = System.nanoTime() - start;
+        return sink == 0L ? elapsed : elapsed + 1L;
+    }
+
+    /// Pick the fastest single byte search kernel according to the remaining length and the segment kind
+    private static long byteSearch(long startIndex, MemorySegment segment, byte b) {
+        long remaining = segment.byteSize() - startIndex;
+        if(remaining < VECTOR_THRESHOLD) {
+            return swarSearch(startIndex, segment, b);
+        } else if(remaining >= MEMCHR_THRESHOLD && segment.isNative()) {
+            return memchrSearch(startIndex, segment, b);
+        } else {
+            return vectorSearch(startIndex, segment, b);
+        }
+    }
+
+    private static long memchrSearch(long startIndex, MemorySegment segment, byte b) {
+        long r = MemAccess.memchr(segment.asSlice(startIndex), b);
+        return r < 0L ? -1L : startIndex + r + Byte.BYTES;
+    }
+
+    private static long vectorSearch(long startIndex, MemorySegment segment, byte b) {
+        final long end = segment.byteSize();
+        final int length = ByteVector.SPECIES_PREFERRED.length();
+        long index = startIndex;
+        for( ; index + length <= end; index += length) {
+            ByteVector vec = ByteVector.fromMemorySegment(ByteVector.SPECIES_PREFERRED, segment, index, ByteOrder.nativeOrder());
+            int r = vec.eq(b).firstTrue();
+            if(r < length) {
+                return index + r + Byte.BYTES;
+            }
+        }
+        return index == end ? -1L : swarSearch(index, segment, b);
+    }
+
     private static long vectorSearch(long startIndex, MemorySegment segment, ByteVectorMatcher matcher) {
+        if(matcher instanceof ByteMatchers.ByteSet set) {
+            return set.search(startIndex, segment);
+        }
         final int start = Math.toIntExact(startIndex);
         final int end = Math.toIntExact(segment.byteSize());
         for(int index = start; index < end; index += ByteVector.SPECIES_PREFERRED.length()) {
             VectorMask<Byte> mask = ByteVector.SPECIES_PREFERRED.indexInRange(index, end);
             ByteVector vec = ByteVector.fromMemorySegment(ByteVector.SPECIES_PREFERRED, segment, index, ByteOrder.nativeOrder(), mask);
-            int r = matcher.match(vec).firstTrue();
+            // lanes outside the segment are loaded as zero, they must not be reported
+            int r = matcher.match(vec).and(mask).firstTrue();
             if(r < ByteVector.SPECIES_PREFERRED.length()) {
-                return startIndex + index + r + Byte.BYTES;
+                return (long) index + r + Byte.BYTES;
+            }
+        }
+        return -1L;
+    }
+
+    /// Candidates are walked as a long bitmask, so the species is capped at 64 lanes for wider vectors such as SVE 2048
+    private static final VectorSpecies<Byte> NEEDLE_SPECIES = ByteVector.SPECIES_PREFERRED.length() <= Long.SIZE ? ByteVector.SPECIES_PREFERRED : ByteVector.SPECIES_512;
+
+    private static long needleSearch(long startIndex, MemorySegment segment, MemorySegment needle) {
+        final long len = needle.byteSize();
+        final long end = segment.byteSize() - len; // last possible start of the needle
+        final byte first = MemAccess.getByte(needle, 0L);
+        final byte last = MemAccess.getByte(needle, len - 1);
+        final int length = NEEDLE_SPECIES.length();
+        long index = startIndex;
+        // filter candidates by comparing the first and last bytes of the needle at the same time
+        if(end - index >= length) {
+            ByteVector firstVec = ByteVector.broadcast(NEEDLE_SPECIES, first);
+            ByteVector lastVec = ByteVector.broadcast(NEEDLE_SPECIES, last);
+            for( ; index + length - 1 <= end; index += length) {
+                ByteVector head = ByteVector.fromMemorySegment(NEEDLE_SPECIES, segment, index, ByteOrder.nativeOrder());
+                ByteVector tail = ByteVector.fromMemorySegment(NEEDLE_SPECIES, segment, index + len - 1, ByteOrder.nativeOrder());
+                long candidates = head.eq(firstVec).and(tail.eq(lastVec)).toLong();
+                while (candidates != 0L) {
+                    long candidate = index + Long.numberOfTrailingZeros(candidates);
+                    if(len <= 2L || MemorySegment.mismatch(segment, candidate + 1, candidate + len - 1, needle, 1L, len - 1) < 0L) {
+                        return candidate + len;
+                    }
+                    candidates &= candidates - 1;
+                }
+            }
+        }
+        for( ; index <= end; index++) {
+            if(MemAccess.getByte(segment, index) == first && MemAccess.getByte(segment, index + len - 1) == last
+                    && (len <= 2L || MemorySegment.mismatch(segment, index + 1, index + len - 1, needle, 1L, len - 1) < 0L)) {
+                return index + len;
             }
         }
         return -1L;
@@ -176,6 +536,11 @@ public sealed abstract class ReadBuffer permits ReadBuffer.SingleReadBuffer, Rea
             this.segment = m.isReadOnly() ? m : m.asReadOnly();
         }
 
+        /// Empty buffer returned by zero length slices, any read would throw IndexOutOfBoundsException
+        private SingleReadBuffer() {
+            this.segment = EMPTY;
+        }
+
         @Override
         public long readIndex() {
             return readIndex;
@@ -185,10 +550,31 @@ public sealed abstract class ReadBuffer permits ReadBuffer.SingleReadBuffer, Rea
         public void setIndex(long index) {
             if(index >= 0L && index <= segment.byteSize()) {
                 readIndex = index;
+                return ;
             }
             throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + segment.byteSize());
         }
 
+        @Override
+        public byte getByte(long index) {
+            return MemAccess.getByte(segment, index);
+        }
+
+        @Override
+        public short getShort(long index, ByteOrder byteOrder) {
+            return MemAccess.getShort(segment, index, byteOrder);
+        }
+
+        @Override
+        public int getInt(long index, ByteOrder byteOrder) {
+            return MemAccess.getInt(segment, index, byteOrder);
+        }
+
+        @Override
+        public long getLong(long index, ByteOrder byteOrder) {
+            return MemAccess.getLong(segment, index, byteOrder);
+        }
+
         @Override
         public long available() {
             return Math.subtractExact(segment.byteSize(), readIndex);
@@ -201,7 +587,54 @@ public sealed abstract class ReadBuffer permits ReadBuffer.SingleReadBuffer, Rea
 
         @Override
         public byte[] copy(long startIndex, long endIndex) {
-            return segment.asSlice(startIndex, endIndex).toArray(ValueLayout.JAVA_BYTE);
+            return segment.asSlice(startIndex, Math.subtractExact(endIndex, startIndex)).toArray(ValueLayout.JAVA_BYTE);
+        }
+
+        @Override
+        public long readVarLong() {
+            if(segment.byteSize() - readIndex >= Long.BYTES) {
+                long word = MemAccess.getLong(segment, readIndex, ByteOrder.LITTLE_ENDIAN);
+                int n = ReadBuffer.varLength(word);
+                if(n > 0) {
+                    readIndex += n;
+                    return ReadBuffer.varValue(word, n);
+                }
+            }
+            return slowVarLong();
+        }
+
+        @Override
+        void readArray(Object dst, ValueLayout layout, int off, int len) {
+            long nextReadIndex = Math.addExact(readIndex, Math.multiplyExact(layout.byteSize(), (long) len));
+            MemorySegment.copy(segment, layout, readIndex, dst, off, len);
+            readIndex = nextReadIndex;
+        }
+
+        @Override
+        public ReadBuffer readSlice(long len) {
+            MemorySegment m = readSegment(len);
+            return len == 0L ? new SingleReadBuffer() : new SingleReadBuffer(m);
+        }
+
+        @Override
+        public MemorySegment contiguous(long len) {
+            return segment.asSlice(readIndex, len);
+        }
+
+        @Override
+        public void skip(long len) {
+            long nextReadIndex = Math.addExact(readIndex, len);
+            if(len < 0L || nextReadIndex > segment.byteSize()) {
+                throw new IndexOutOfBoundsException();
+            }
+            readIndex = nextReadIndex;
+        }
+
+        @Override
+        public MemorySegment readSegment(long len) {
+            MemorySegment m = segment.asSlice(readIndex, len);
+            readIndex = Math.addExact(readIndex, len);
+            return m;
         }
 
         @Override
@@ -253,9 +686,33 @@ public sealed abstract class ReadBuffer permits ReadBuffer.SingleReadBuffer, Rea
             return r;
         }
 
+        @Override
+        public String readUtf8(long length) {
+            int len = Math.toIntExact(length);
+            if(Math.addExact(readIndex, length) > segment.byteSize()) {
+                throw new IndexOutOfBoundsException();
+            }
+            String r = Utf8.decode(segment, readIndex, len, scratch(len));
+            readIndex = Math.addExact(readIndex, length);
+            return r;
+        }
+
+        @Override
+        public String readUtf8Until(byte delimiter) {
+            long start = readIndex;
+            long nextIndex = ReadBuffer.byteSearch(start, segment, delimiter);
+            if(nextIndex < 0L) {
+                return null;
+            }
+            int len = Math.toIntExact(nextIndex - start - Byte.BYTES);
+            String r = Utf8.decode(segment, start, len, scratch(len));
+            readIndex = nextIndex;
+            return r;
+        }
+
         @Override
         public long search(byte b) {
-            long nextIndex = ReadBuffer.swarSearch(readIndex, segment, b);
+            long nextIndex = ReadBuffer.byteSearch(readIndex, segment, b);
             if(nextIndex >= 0L) {
                 readIndex = nextIndex;
             }
@@ -279,28 +736,66 @@ public sealed abstract class ReadBuffer permits ReadBuffer.SingleReadBuffer, Rea
             }
             return nextIndex;
         }
+
+        @Override
+        public long search(MemorySegment needle) {
+            if(needle.byteSize() == 0L) {
+                throw new IllegalArgumentException("needle must not be empty");
+            } else if(needle.byteSize() == 1L) {
+                return search(MemAccess.getByte(needle, 0L));
+            }
+            long nextIndex = ReadBuffer.needleSearch(readIndex, segment, needle);
+            if(nextIndex >= 0L) {
+                readIndex = nextIndex;
+            }
+            return nextIndex;
+        }
     }
 
-    private static final class MultipleReadBuffer extends ReadBuffer {
-        private final List<MemorySegment> segments;
-        private final long size;
-        private int listIndex = 0;
-        private long segmentIndex = 0L;
-        private long readIndex = 0L;
+    private static sealed class MultipleReadBuffer extends ReadBuffer permits StreamingReadBuffer {
+        final List<MemorySegment> segments;
+        long size;
+        int listIndex = 0;
+        long segmentIndex = 0L;
+        long readIndex = 0L;
+        /// Prefix sums of segment sizes, starts[i] is the absolute index where segments[i] begins
+        long[] starts;
+        /// Segment found by the last lookup, sequential access would mostly hit it or its successor
+        private int hint = 0;
 
         private MultipleReadBuffer(List<MemorySegment> ms) {
             long s = 0L;
             segments = new ArrayList<>(ms.size());
+            starts = new long[Math.max(ms.size(), 4)];
             for (MemorySegment m : ms) {
                 if(m == null || m.byteSize() == 0L) {
                     throw new IllegalArgumentException("segment must not be empty");
                 }
+                starts[segments.size()] = s;
                 s = Math.addExact(s, m.byteSize());
                 segments.add(m.isReadOnly() ? m : m.asReadOnly());
             }
             size = s;
         }
 
+        /// Find the segment containing the absolute index, index equal to size would be located in the last segment
+        final int locate(long index) {
+            final int n = segments.size();
+            int h = hint;
+            if(h < n && starts[h] <= index) {
+                if(h == n - 1 || index < starts[h + 1]) {
+                    return h;
+                } else if(h + 1 == n - 1 || index < starts[h + 2]) {
+                    hint = h + 1;
+                    return h + 1;
+                }
+            }
+            int r = Arrays.binarySearch(starts, 0, n, index);
+            r = r >= 0 ? r : Math.max(-r - 2, 0);
+            hint = r;
+            return r;
+        }
+
         @Override
         public long readIndex() {
             return readIndex;
@@ -310,10 +805,47 @@ public sealed abstract class ReadBuffer permits ReadBuffer.SingleReadBuffer, Rea
         public void setIndex(long index) {
             if(index >= 0L && index <= size) {
                 readIndex = index;
+                listIndex = locate(index);
+                segmentIndex = segments.isEmpty() ? 0L : Math.subtractExact(index, starts[listIndex]);
+                return ;
             }
             throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
         }
 
+        private MemorySegment peek(long index, int len) {
+            if(index < 0L || Math.addExact(index, len) > size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            int i = locate(index);
+            long offset = Math.subtractExact(index, starts[i]);
+            MemorySegment target = segments.get(i);
+            if(Math.addExact(offset, len) <= target.byteSize()) {
+                return target.asSlice(offset, len);
+            }
+            gather(index, joint, len);
+            return joint;
+        }
+
+        @Override
+        public byte getByte(long index) {
+            return MemAccess.getByte(peek(index, Byte.BYTES), 0L);
+        }
+
+        @Override
+        public short getShort(long index, ByteOrder byteOrder) {
+            return MemAccess.getShort(peek(index, Short.BYTES), 0L, byteOrder);
+        }
+
+        @Override
+        public int getInt(long index, ByteOrder byteOrder) {
+            return MemAccess.getInt(peek(index, Integer.BYTES), 0L, byteOrder);
+        }
+
+        @Override
+        public long getLong(long index, ByteOrder byteOrder) {
+            return MemAccess.getLong(peek(index, Long.BYTES), 0L, byteOrder);
+        }
+
         @Override
         public long available() {
             return Math.subtractExact(size, readIndex);
@@ -330,35 +862,197 @@ public sealed abstract class ReadBuffer permits ReadBuffer.SingleReadBuffer, Rea
                 throw new IndexOutOfBoundsException();
             }
             long total = Math.subtractExact(endIndex, startIndex);
-            if(total < 0L) {
-                throw new IndexOutOfBoundsException();
-            }else if(total == 0L) {
+            if(total == 0L) {
                 return new byte[0];
-            }else {
-                byte[] bytes = new byte[Math.toIntExact(total)];
-                MemorySegment m = MemorySegment.ofArray(bytes);
-                long index = 0L;
-                for (MemorySegment target : segments) {
-                    long len = target.byteSize();
-                    if (len <= startIndex) {
-                        startIndex = Math.subtractExact(startIndex, len);
-                        endIndex = Math.subtractExact(endIndex, len);
-                    } else if (len <= endIndex) {
-                        long copied = Math.subtractExact(len, startIndex);
-                        MemorySegment.copy(target, startIndex, m, index, copied);
-                        startIndex = 0L;
-                        endIndex = Math.subtractExact(endIndex, len);
-                    } else {
-                        MemorySegment.copy(target, startIndex, m, index, endIndex);
-                        return bytes;
+            }
+            byte[] bytes = new byte[Math.toIntExact(total)];
+            gather(startIndex, MemorySegment.ofArray(bytes), total);
+            return bytes;
+        }
+
+        /// Copy len bytes starting from startIndex into dst
+        void gather(long startIndex, MemorySegment dst, long len) {
+            if(len == 0L) {
+                return ;
+            }
+            if(startIndex < 0L || Math.addExact(startIndex, len) > size) {
+                throw new IndexOutOfBoundsException();
+            }
+            long dstIndex = 0L;
+            int i = locate(startIndex);
+            long offset = Math.subtractExact(startIndex, starts[i]);
+            while (len > 0L) {
+                MemorySegment target = segments.get(i++);
+                long copied = Math.min(Math.subtractExact(target.byteSize(), offset), len);
+                MemorySegment.copy(target, offset, dst, dstIndex, copied);
+                dstIndex = Math.addExact(dstIndex, copied);
+                len = Math.subtractExact(len, copied);
+                offset = 0L;
+            }
+        }
+
+        /// Move the cursor forward by len bytes
+        void advance(long len) {
+            long nextReadIndex = Math.addExact(readIndex, len);
+            if(nextReadIndex > size) {
+                throw new IndexOutOfBoundsException();
+            }
+            readIndex = nextReadIndex;
+            long offset = Math.addExact(segmentIndex, len);
+            if(listIndex < segments.size() - 1 && offset >= segments.get(listIndex).byteSize()) {
+                listIndex = locate(nextReadIndex);
+                offset = Math.subtractExact(nextReadIndex, starts[listIndex]);
+            }
+            segmentIndex = offset;
+        }
+
+        @Override
+        public String readUtf8(long length) {
+            int len = Math.toIntExact(length);
+            if(Math.addExact(readIndex, length) > size) {
+                throw new IndexOutOfBoundsException();
+            }
+            byte[] bytes = scratch(len);
+            gather(readIndex, MemorySegment.ofArray(bytes), length);
+            advance(length);
+            return new String(bytes, 0, len, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String readUtf8Until(byte delimiter) {
+            long start = readIndex;
+            if(search(delimiter) < 0L) {
+                return null;
+            }
+            int len = Math.toIntExact(readIndex - start - Byte.BYTES);
+            byte[] bytes = scratch(len);
+            gather(start, MemorySegment.ofArray(bytes), len);
+            return new String(bytes, 0, len, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public long readVarLong() {
+            if(listIndex < segments.size()) {
+                MemorySegment target = segments.get(listIndex);
+                if(target.byteSize() - segmentIndex >= Long.BYTES) {
+                    long word = MemAccess.getLong(target, segmentIndex, ByteOrder.LITTLE_ENDIAN);
+                    int n = ReadBuffer.varLength(word);
+                    if(n > 0) {
+                        advance(n);
+                        return ReadBuffer.varValue(word, n);
                     }
                 }
-                throw new RuntimeException("unreached");
             }
+            return slowVarLong();
+        }
+
+        @Override
+        void readArray(Object dst, ValueLayout layout, int off, int len) {
+            final long elementSize = layout.byteSize();
+            Objects.checkFromIndexSize(off, len, Array.getLength(dst));
+            if(Math.addExact(readIndex, Math.multiplyExact(elementSize, (long) len)) > size) {
+                throw new IndexOutOfBoundsException();
+            }
+            while (len > 0) {
+                MemorySegment target = segments.get(listIndex);
+                int n = (int) Math.min((target.byteSize() - segmentIndex) / elementSize, len);
+                if(n > 0) {
+                    MemorySegment.copy(target, layout, segmentIndex, dst, off, n);
+                } else {
+                    // the element straddles segments
+                    n = 1;
+                    gather(readIndex, joint, elementSize);
+                    MemorySegment.copy(joint, layout, 0L, dst, off, n);
+                }
+                advance(elementSize * n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public ReadBuffer readSlice(long len) {
+            MemorySegment m = readSegment(len);
+            if(m != null) {
+                return len == 0L ? new SingleReadBuffer() : new SingleReadBuffer(m);
+            }
+            List<MemorySegment> slices = new ArrayList<>();
+            long offset = segmentIndex;
+            long remaining = len;
+            for(int i = listIndex; remaining > 0L; i++) {
+                MemorySegment target = segments.get(i);
+                long n = Math.min(Math.subtractExact(target.byteSize(), offset), remaining);
+                if(n > 0L) {
+                    slices.add(target.asSlice(offset, n));
+                    remaining = Math.subtractExact(remaining, n);
+                }
+                offset = 0L;
+            }
+            advance(len);
+            return new MultipleReadBuffer(slices);
         }
 
+        @Override
+        public MemorySegment contiguous(long len) {
+            if(len < 0L || Math.addExact(readIndex, len) > size) {
+                throw new IndexOutOfBoundsException();
+            }
+            if(len == 0L) {
+                return EMPTY;
+            }
+            int i = listIndex;
+            long offset = segmentIndex;
+            if(offset == segments.get(i).byteSize()) {
+                // cursor is at the end of an exhausted segment
+                i++;
+                offset = 0L;
+            }
+            MemorySegment target = segments.get(i);
+            if(Math.addExact(offset, len) <= target.byteSize()) {
+                return target.asSlice(offset, len);
+            }
+            MemorySegment joined = MemorySegment.ofArray(scratch(Math.toIntExact(len))).asSlice(0L, len);
+            gather(readIndex, joined, len);
+            return joined;
+        }
+
+        @Override
+        public void skip(long len) {
+            if(len < 0L) {
+                throw new IndexOutOfBoundsException();
+            }
+            advance(len);
+        }
+
+        @Override
+        public MemorySegment readSegment(long len) {
+            if(len < 0L || Math.addExact(readIndex, len) > size) {
+                throw new IndexOutOfBoundsException();
+            }
+            if(len == 0L) {
+                return EMPTY;
+            }
+            int i = listIndex;
+            long offset = segmentIndex;
+            if(offset == segments.get(i).byteSize()) {
+                // cursor is at the end of an exhausted segment
+                i++;
+                offset = 0L;
+            }
+            MemorySegment target = segments.get(i);
+            if(Math.addExact(offset, len) > target.byteSize()) {
+                return null;
+            }
+            MemorySegment r = target.asSlice(offset, len);
+            advance(len);
+            return r;
+        }
+
+        /// Scratch segment for primitive reads crossing segment boundaries
+        private final MemorySegment joint = MemorySegment.ofArray(new byte[Long.BYTES]);
+
         private MemorySegment joinSegment(int size) {
-            MemorySegment heap = MemorySegment.ofArray(new byte[size]);
+            MemorySegment heap = joint;
             long heapIndex = 0L;
             long offset = segmentIndex;
             int currentIndex = listIndex;
@@ -366,16 +1060,17 @@ public sealed abstract class ReadBuffer permits ReadBuffer.SingleReadBuffer, Rea
             long available;
             do {
                 MemorySegment target = segments.get(currentIndex);
-                required = Math.subtractExact(heap.byteSize(), heapIndex);
+                required = Math.subtractExact(size, heapIndex);
                 available = Math.subtractExact(target.byteSize(), offset);
                 if(available >= required) {
                     MemorySegment.copy(target, offset, heap, heapIndex, required);
-                    segmentIndex = required;
+                    segmentIndex = Math.addExact(offset, required);
                     break ;
                 } else {
                     MemorySegment.copy(target, offset, heap, heapIndex, available);
                     heapIndex = Math.addExact(heapIndex, available);
                     currentIndex = Math.addExact(currentIndex, 1);
+                    offset = 0L;
                 }
             } while (currentIndex < segments.size());
             listIndex = currentIndex;
@@ -393,7 +1088,7 @@ public sealed abstract class ReadBuffer permits ReadBuffer.SingleReadBuffer, Rea
             MemorySegment m = segments.get(listIndex);
             long nextIndex = Math.addExact(segmentIndex, ValueLayout.JAVA_BYTE.byteSize());
             if(nextIndex <= m.byteSize()) {
-                byte r = MemAccess.getByte(m, nextIndex);
+                byte r = MemAccess.getByte(m, segmentIndex);
                 segmentIndex = nextIndex;
                 return r;
             }
@@ -412,7 +1107,7 @@ public sealed abstract class ReadBuffer permits ReadBuffer.SingleReadBuffer, Rea
             MemorySegment m = segments.get(listIndex);
             long nextIndex = Math.addExact(segmentIndex, ValueLayout.JAVA_SHORT.byteSize());
             if(nextIndex <= m.byteSize()) {
-                short r = MemAccess.getShort(m, nextIndex, byteOrder);
+                short r = MemAccess.getShort(m, segmentIndex, byteOrder);
                 segmentIndex = nextIndex;
                 return r;
             }
@@ -431,7 +1126,7 @@ public sealed abstract class ReadBuffer permits ReadBuffer.SingleReadBuffer, Rea
             MemorySegment m = segments.get(listIndex);
             long nextIndex = Math.addExact(segmentIndex, ValueLayout.JAVA_CHAR.byteSize());
             if(nextIndex <= m.byteSize()) {
-                char r = MemAccess.getChar(m, nextIndex, byteOrder);
+                char r = MemAccess.getChar(m, segmentIndex, byteOrder);
                 segmentIndex = nextIndex;
                 return r;
             }
@@ -450,7 +1145,7 @@ public sealed abstract class ReadBuffer permits ReadBuffer.SingleReadBuffer, Rea
             MemorySegment m = segments.get(listIndex);
             long nextIndex = Math.addExact(segmentIndex, ValueLayout.JAVA_INT.byteSize());
             if(nextIndex <= m.byteSize()) {
-                int r = MemAccess.getInt(m, nextIndex, byteOrder);
+                int r = MemAccess.getInt(m, segmentIndex, byteOrder);
                 segmentIndex = nextIndex;
                 return r;
             }
@@ -469,7 +1164,7 @@ public sealed abstract class ReadBuffer permits ReadBuffer.SingleReadBuffer, Rea
             MemorySegment m = segments.get(listIndex);
             long nextIndex = Math.addExact(segmentIndex, ValueLayout.JAVA_LONG.byteSize());
             if(nextIndex <= m.byteSize()) {
-                long r = MemAccess.getLong(m, nextIndex, byteOrder);
+                long r = MemAccess.getLong(m, segmentIndex, byteOrder);
                 segmentIndex = nextIndex;
                 return r;
             }
@@ -488,7 +1183,7 @@ public sealed abstract class ReadBuffer permits ReadBuffer.SingleReadBuffer, Rea
             MemorySegment m = segments.get(listIndex);
             long nextIndex = Math.addExact(segmentIndex, ValueLayout.JAVA_FLOAT.byteSize());
             if(nextIndex <= m.byteSize()) {
-                float r = MemAccess.getFloat(m, nextIndex, byteOrder);
+                float r = MemAccess.getFloat(m, segmentIndex, byteOrder);
                 segmentIndex = nextIndex;
                 return r;
             }
@@ -507,7 +1202,7 @@ public sealed abstract class ReadBuffer permits ReadBuffer.SingleReadBuffer, Rea
             MemorySegment m = segments.get(listIndex);
             long nextIndex = Math.addExact(segmentIndex, ValueLayout.JAVA_DOUBLE.byteSize());
             if(nextIndex <= m.byteSize()) {
-                double r = MemAccess.getDouble(m, nextIndex, byteOrder);
+                double r = MemAccess.getDouble(m, segmentIndex, byteOrder);
                 segmentIndex = nextIndex;
                 return r;
             }
@@ -521,7 +1216,7 @@ public sealed abstract class ReadBuffer permits ReadBuffer.SingleReadBuffer, Rea
             long r = readIndex;
             for(int i = listIndex; i < segments.size(); i++) {
                 MemorySegment target = segments.get(i);
-                long nextIndex = ReadBuffer.swarSearch(s, target, b);
+                long nextIndex = ReadBuffer.byteSearch(s, target, b);
                 if(nextIndex >= 0L) {
                     readIndex = Math.addExact(r, Math.subtractExact(nextIndex, s));
                     segmentIndex = nextIndex;
@@ -574,5 +1269,222 @@ public sealed abstract class ReadBuffer permits ReadBuffer.SingleReadBuffer, Rea
             }
             return -1L;
         }
+
+        @Override
+        public long search(MemorySegment needle) {
+            final long len = needle.byteSize();
+            if(len == 0L) {
+                throw new IllegalArgumentException("needle must not be empty");
+            } else if(len == 1L) {
+                return search(MemAccess.getByte(needle, 0L));
+            }
+            long segmentStart = Math.subtractExact(readIndex, segmentIndex);
+            long s = segmentIndex;
+            for(int i = listIndex; i < segments.size(); i++) {
+                MemorySegment target = segments.get(i);
+                long nextIndex = ReadBuffer.needleSearch(s, target, needle);
+                if(nextIndex >= 0L) {
+                    advance(segmentStart + nextIndex - readIndex);
+                    return readIndex;
+                }
+                long segmentEnd = Math.addExact(segmentStart, target.byteSize());
+                if(i < segments.size() - 1) {
+                    // matches across the boundary could only be found within len - 1 bytes on both sides
+                    long windowStart = Math.max(readIndex, segmentEnd - (len - 1));
+                    long windowEnd = Math.min(size, segmentEnd + (len - 1));
+                    long windowSize = windowEnd - windowStart;
+                    if(windowSize >= len) {
+                        MemorySegment window = MemorySegment.ofArray(scratch(Math.toIntExact(windowSize))).asSlice(0L, windowSize);
+                        gather(windowStart, window, windowSize);
+                        long r = ReadBuffer.needleSearch(0L, window, needle);
+                        if(r >= 0L) {
+                            advance(windowStart + r - readIndex);
+                            return readIndex;
+                        }
+                    }
+                }
+                segmentStart = segmentEnd;
+                s = 0L;
+            }
+            return -1L;
+        }
+    }
+
+    /// ReadBuffer for incremental parsing, segments could be appended as more bytes arrive, and fully consumed
+    /// leading segments could be released for freeing or recycling. Unsuccessful searches remember how far they have
+    /// scanned, so repeating the same search after appending only scans the new bytes
+    public static final class StreamingReadBuffer extends MultipleReadBuffer {
+        private static final int SCAN_NONE = 0;
+        private static final int SCAN_BYTE = 1;
+        private static final int SCAN_MATCHER = 2;
+        private static final int SCAN_VECTOR = 3;
+        private static final int SCAN_NEEDLE = 4;
+        /// Longer needles are not remembered, they are searched from the read index every time
+        private static final long MAX_SCAN_NEEDLE = 4096L;
+        private final List<MemorySegment> origins = new ArrayList<>();
+        private int scanKind = SCAN_NONE;
+        private byte scanByte;
+        private Object scanKey;
+        private byte[] scanNeedle = new byte[0];
+        private int scanNeedleLength;
+        private long scanIndex;
+
+        private StreamingReadBuffer() {
+            super(List.of());
+        }
+
+        /// Append a segment to the tail, empty segments are ignored
+        public void append(MemorySegment segment) {
+            Objects.requireNonNull(segment);
+            if(segment.byteSize() == 0L) {
+                return ;
+            }
+            if(segments.size() == starts.length) {
+                starts = Arrays.copyOf(starts, starts.length << 1);
+            }
+            starts[segments.size()] = size;
+            size = Math.addExact(size, segment.byteSize());
+            segments.add(segment.isReadOnly() ? segment : segment.asReadOnly());
+            origins.add(segment);
+        }
+
+        /// Remove fully consumed leading segments, returning them as they were appended, all the indexes would be
+        /// decreased by the released bytes
+        public List<MemorySegment> release() {
+            int count = listIndex;
+            if(count < segments.size() && segmentIndex == segments.get(count).byteSize()) {
+                count++;
+            }
+            if(count == 0) {
+                return List.of();
+            }
+            long released = 0L;
+            for(int i = 0; i < count; i++) {
+                released = Math.addExact(released, segments.get(i).byteSize());
+            }
+            List<MemorySegment> r = List.copyOf(origins.subList(0, count));
+            segments.subList(0, count).clear();
+            origins.subList(0, count).clear();
+            if(listIndex < count) {
+                segmentIndex = 0L;
+            }
+            listIndex = Math.max(listIndex - count, 0);
+            System.arraycopy(starts, count, starts, 0, segments.size());
+            for(int i = 0; i < segments.size(); i++) {
+                starts[i] = Math.subtractExact(starts[i], released);
+            }
+            size = Math.subtractExact(size, released);
+            readIndex = Math.subtractExact(readIndex, released);
+            scanIndex = Math.max(Math.subtractExact(scanIndex, released), 0L);
+            return r;
+        }
+
+        /// Moving backwards forgets the remembered scan, since the bytes before the old readIndex were never scanned
+        @Override
+        public void setIndex(long index) {
+            long previous = readIndex;
+            super.setIndex(index);
+            if(index < previous) {
+                scanKind = SCAN_NONE;
+                scanKey = null;
+            }
+        }
+
+        /// Whether the search of kind with b or key is the one which stopped at scanIndex, needles are compared by
+        /// content since callers usually build a new segment for every search
+        private boolean sameScan(int kind, byte b, Object key) {
+            if(kind != scanKind) {
+                return false;
+            }
+            return switch (kind) {
+                case SCAN_BYTE -> b == scanByte;
+                case SCAN_NEEDLE -> {
+                    MemorySegment needle = (MemorySegment) key;
+                    yield needle.byteSize() == scanNeedleLength && MemorySegment.mismatch(needle, 0L, scanNeedleLength, MemorySegment.ofArray(scanNeedle), 0L, scanNeedleLength) == -1L;
+                }
+                default -> key == scanKey;
+            };
+        }
+
+        private long scan(int kind, byte b, Object key) {
+            return switch (kind) {
+                case SCAN_BYTE -> super.search(b);
+                case SCAN_MATCHER -> super.search((ByteMatcher) key);
+                case SCAN_VECTOR -> super.vectorSearch((ByteVectorMatcher) key);
+                default -> super.search((MemorySegment) key);
+            };
+        }
+
+        /// Start the search from where the last unsuccessful search of the same key stopped, recording the new stop
+        /// position if not found again
+        private long resume(int kind, byte b, Object key, long rescan) {
+            if(scanIndex <= readIndex || !sameScan(kind, b, key)) {
+                return record(kind, b, key, rescan, scan(kind, b, key));
+            }
+            long savedReadIndex = readIndex;
+            int savedListIndex = listIndex;
+            long savedSegmentIndex = segmentIndex;
+            advance(scanIndex - readIndex);
+            long r = scan(kind, b, key);
+            if(r < 0L) {
+                readIndex = savedReadIndex;
+                listIndex = savedListIndex;
+                segmentIndex = savedSegmentIndex;
+            }
+            return record(kind, b, key, rescan, r);
+        }
+
+        private long record(int kind, byte b, Object key, long rescan, long r) {
+            if(r >= 0L) {
+                scanKind = SCAN_NONE;
+                scanKey = null;
+                return r;
+            }
+            if(kind == SCAN_NEEDLE) {
+                // the needle is copied as its content might be changed by the caller before the next search
+                MemorySegment needle = (MemorySegment) key;
+                if(needle.byteSize() > MAX_SCAN_NEEDLE) {
+                    scanKind = SCAN_NONE;
+                    return r;
+                }
+                int length = (int) needle.byteSize();
+                if(scanNeedle.length < length) {
+                    scanNeedle = new byte[length];
+                }
+                MemorySegment.copy(needle, ValueLayout.JAVA_BYTE, 0L, scanNeedle, 0, length);
+                scanNeedleLength = length;
+                scanKey = null;
+            } else {
+                scanKey = key;
+            }
+            scanKind = kind;
+            scanByte = b;
+            scanIndex = Math.max(readIndex, size - rescan);
+            return r;
+        }
+
+        @Override
+        public long search(byte b) {
+            return resume(SCAN_BYTE, b, null, 0L);
+        }
+
+        @Override
+        public long search(ByteMatcher matcher) {
+            return resume(SCAN_MATCHER, (byte) 0, matcher, 0L);
+        }
+
+        @Override
+        public long vectorSearch(ByteVectorMatcher matcher) {
+            return resume(SCAN_VECTOR, (byte) 0, matcher, 0L);
+        }
+
+        @Override
+        public long search(MemorySegment needle) {
+            if(needle.byteSize() <= 1L) {
+                return super.search(needle);
+            }
+            // a match could still start within the last len - 1 bytes once more bytes arrive
+            return resume(SCAN_NEEDLE, (byte) 0, needle, needle.byteSize() - 1);
+        }
     }
 }
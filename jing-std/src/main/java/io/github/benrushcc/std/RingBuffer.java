@@ -0,0 +1,308 @@
+package io.github.benrushcc.std;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.VarHandle;
+
+/// Lock-free byte message ring buffer working over any segment, including shared memory, so handing messages between
+/// threads allocates nothing
+///
+/// The segment holds `capacity` bytes of records followed by the head and tail counters, each on its own cache line
+/// pair. Every record starts with an 8 bytes header, an int record length including the header and an int type, and is
+/// aligned to 8 bytes, a padding record fills the end of the buffer when a record doesn't fit before wrapping. Producers
+/// claim space, write the payload at the returned offset, then commit it, the record length is negative until being
+/// committed and the consumer stops at it. The consumer zeroes the consumed bytes before moving the head, so unwritten
+/// headers always read as zero
+///
+/// [#spsc(MemorySegment)] and [#mpsc(MemorySegment)] zero the whole segment, since memory from malloc or mmap might
+/// hold garbage, use the overloads without initialization only to attach to a ring already initialized elsewhere, such
+/// as shared memory set up by another process. The segment must be 8 bytes aligned, either native or backed by a long
+/// array, as the counters and headers are accessed atomically
+@SuppressWarnings("unused")
+public abstract sealed class RingBuffer permits RingBuffer.SpscRingBuffer, RingBuffer.MpscRingBuffer {
+
+    private static final VarHandle INT_HANDLE = ValueLayout.JAVA_INT.varHandle();
+
+    private static final VarHandle LONG_HANDLE = ValueLayout.JAVA_LONG.varHandle();
+
+    public static final int HEADER_SIZE = 8;
+
+    private static final int PADDING_TYPE = -1;
+
+    private static final long PAD = 128L;
+
+    /// Bytes after the records holding the padded counters
+    public static final long TRAILER_SIZE = PAD * 3L;
+
+    /// Single producer, single consumer ring buffer over segment, which would be zeroed
+    public static RingBuffer spsc(MemorySegment segment) {
+        return spsc(segment, true);
+    }
+
+    /// Single producer, single consumer ring buffer over segment, zeroed only if initialize is true
+    public static RingBuffer spsc(MemorySegment segment, boolean initialize) {
+        return new SpscRingBuffer(segment, initialize);
+    }
+
+    /// Multiple producers, single consumer ring buffer over segment, which would be zeroed
+    public static RingBuffer mpsc(MemorySegment segment) {
+        return mpsc(segment, true);
+    }
+
+    /// Multiple producers, single consumer ring buffer over segment, zeroed only if initialize is true
+    public static RingBuffer mpsc(MemorySegment segment, boolean initialize) {
+        return new MpscRingBuffer(segment, initialize);
+    }
+
+    /// Size of the segment required for a ring buffer with capacity bytes for records
+    public static long requiredSize(int capacity) {
+        return capacity + TRAILER_SIZE;
+    }
+
+    /// Receive messages in [#read(MessageHandler, int)], the payload must not be accessed after returning
+    @FunctionalInterface
+    public interface MessageHandler {
+        void onMessage(int type, MemorySegment buffer, long offset, int length);
+    }
+
+    protected final MemorySegment buffer;
+    protected final int capacity;
+    protected final int mask;
+    protected final int maxRecordSize;
+    protected final long headOffset;
+    protected final long tailOffset;
+
+    RingBuffer(MemorySegment segment, boolean initialize) {
+        long c = segment.byteSize() - TRAILER_SIZE;
+        if(c < 64L || c > (1L << 30) || Long.bitCount(c) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two between 64 and 2^30 bytes, got segment size : " + segment.byteSize());
+        }
+        // heap segments over other arrays fail the aligned access modes at runtime
+        if((!segment.isNative() && !(segment.heapBase().orElse(null) instanceof long[])) || (segment.address() & 7L) != 0L) {
+            throw new IllegalArgumentException("Segment must be aligned to 8 bytes, either native or backed by long[]");
+        }
+        if(segment.isReadOnly()) {
+            throw new IllegalArgumentException("Segment must not be read-only");
+        }
+        if(initialize) {
+            segment.fill((byte) 0);
+        }
+        buffer = segment;
+        capacity = (int) c;
+        mask = capacity - 1;
+        maxRecordSize = capacity >>> 3;
+        headOffset = c + PAD;
+        tailOffset = c + (PAD << 1);
+    }
+
+    public static int recordSize(int length) {
+        return Math.toIntExact((length + HEADER_SIZE + 7L) & -8L);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /// Largest payload accepted by a single record
+    public int maxMessageLength() {
+        return maxRecordSize - HEADER_SIZE;
+    }
+
+    /// The underlying segment, payloads are written at the offsets returned by claims
+    public MemorySegment buffer() {
+        return buffer;
+    }
+
+    /// Bytes occupied by the records not yet consumed, might be stale when read concurrently
+    public long size() {
+        long head = (long) LONG_HANDLE.getAcquire(buffer, headOffset);
+        long tail = (long) LONG_HANDLE.getAcquire(buffer, tailOffset);
+        return tail - head;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0L;
+    }
+
+    /// Reserve need bytes, return the starting position, or -1 if there is not enough room
+    abstract long reserve(int need);
+
+    /// Claim count records of length bytes each, return the payload offset of the first record or -1 if the buffer is
+    /// full, record i starts at the returned offset plus i times recordSize(length)
+    public final long tryClaim(int type, int length, int count) {
+        if(length < 0 || count <= 0) {
+            throw new IllegalArgumentException("Invalid length or count");
+        }
+        if(type == PADDING_TYPE) {
+            throw new IllegalArgumentException("Reserved type : " + type);
+        }
+        int recordSize = recordSize(length);
+        if(recordSize > maxRecordSize) {
+            throw new IllegalArgumentException("Message too long : " + length);
+        }
+        if((long) recordSize * count > (capacity >>> 1)) {
+            throw new IllegalArgumentException("Batch too large : " + count);
+        }
+        int need = recordSize * count;
+        long position = reserve(need);
+        if(position < 0L) {
+            return -1L;
+        }
+        int index = (int) position & mask;
+        for(int i = 0; i < count; i++) {
+            long header = index + (long) i * recordSize;
+            INT_HANDLE.set(buffer, header + Integer.BYTES, type);
+            INT_HANDLE.setRelease(buffer, header, -(length + HEADER_SIZE));
+        }
+        return index + HEADER_SIZE;
+    }
+
+    public final long tryClaim(int type, int length) {
+        return tryClaim(type, length, 1);
+    }
+
+    /// Publish count records claimed from offset
+    public final void commit(long offset, int count) {
+        long header = offset - HEADER_SIZE;
+        for(int i = 0; i < count; i++) {
+            int length = (int) INT_HANDLE.get(buffer, header);
+            if(length >= 0) {
+                throw new IllegalStateException("Record not claimed");
+            }
+            INT_HANDLE.setRelease(buffer, header, -length);
+            header += recordSize(-length - HEADER_SIZE);
+        }
+    }
+
+    public final void commit(long offset) {
+        commit(offset, 1);
+    }
+
+    /// Give up count records claimed from offset, the consumer would skip them as padding
+    public final void abort(long offset, int count) {
+        long header = offset - HEADER_SIZE;
+        for(int i = 0; i < count; i++) {
+            int length = (int) INT_HANDLE.get(buffer, header);
+            if(length >= 0) {
+                throw new IllegalStateException("Record not claimed");
+            }
+            INT_HANDLE.set(buffer, header + Integer.BYTES, PADDING_TYPE);
+            INT_HANDLE.setRelease(buffer, header, -length);
+            header += recordSize(-length - HEADER_SIZE);
+        }
+    }
+
+    /// Copy src as one message, return false if the buffer is full
+    public final boolean offer(int type, MemorySegment src) {
+        int length = Math.toIntExact(src.byteSize());
+        long offset = tryClaim(type, length, 1);
+        if(offset < 0L) {
+            return false;
+        }
+        if(length >= MemAccess.MEMCPY_THRESHOLD && src.isNative() && buffer.isNative()) {
+            MemAccess.memcpy(src, 0L, buffer, offset, length);
+        } else {
+            MemorySegment.copy(src, 0L, buffer, offset, length);
+        }
+        commit(offset, 1);
+        return true;
+    }
+
+    /// Write the padding record filling the buffer from index to the end
+    final void pad(int index) {
+        int length = capacity - index;
+        INT_HANDLE.set(buffer, (long) index + Integer.BYTES, PADDING_TYPE);
+        INT_HANDLE.setRelease(buffer, (long) index, length);
+    }
+
+    /// Consume at most limit committed messages in order, return the number of messages handled
+    public final int read(MessageHandler handler, int limit) {
+        long head = (long) LONG_HANDLE.get(buffer, headOffset);
+        int headIndex = (int) head & mask;
+        int consumed = 0;
+        int count = 0;
+        try {
+            while (count < limit && consumed < capacity) {
+                long header = (headIndex + consumed) & mask;
+                int length = (int) INT_HANDLE.getAcquire(buffer, header);
+                if(length <= 0) {
+                    break;
+                }
+                int type = (int) INT_HANDLE.get(buffer, header + Integer.BYTES);
+                consumed += (length + 7) & -8;
+                if(type != PADDING_TYPE) {
+                    count++;
+                    handler.onMessage(type, buffer, header + HEADER_SIZE, length - HEADER_SIZE);
+                }
+            }
+        } finally {
+            if(consumed > 0) {
+                int first = Math.min(consumed, capacity - headIndex);
+                buffer.asSlice(headIndex, first).fill((byte) 0);
+                if(consumed > first) {
+                    buffer.asSlice(0L, consumed - first).fill((byte) 0);
+                }
+                LONG_HANDLE.setRelease(buffer, headOffset, head + consumed);
+            }
+        }
+        return count;
+    }
+
+    static final class SpscRingBuffer extends RingBuffer {
+        /// Head observed by the producer, only refreshed when the buffer looks full
+        private long headCache;
+
+        SpscRingBuffer(MemorySegment segment, boolean initialize) {
+            super(segment, initialize);
+            headCache = (long) LONG_HANDLE.getAcquire(buffer, headOffset);
+        }
+
+        @Override
+        long reserve(int need) {
+            long tail = (long) LONG_HANDLE.get(buffer, tailOffset);
+            int tailIndex = (int) tail & mask;
+            int toEnd = capacity - tailIndex;
+            long required = need > toEnd ? (long) toEnd + need : need;
+            if(capacity - (tail - headCache) < required) {
+                headCache = (long) LONG_HANDLE.getAcquire(buffer, headOffset);
+                if(capacity - (tail - headCache) < required) {
+                    return -1L;
+                }
+            }
+            long position = tail;
+            if(need > toEnd) {
+                pad(tailIndex);
+                position += toEnd;
+            }
+            LONG_HANDLE.setRelease(buffer, tailOffset, tail + required);
+            return position;
+        }
+    }
+
+    static final class MpscRingBuffer extends RingBuffer {
+        MpscRingBuffer(MemorySegment segment, boolean initialize) {
+            super(segment, initialize);
+        }
+
+        @Override
+        long reserve(int need) {
+            for( ; ; ) {
+                long head = (long) LONG_HANDLE.getAcquire(buffer, headOffset);
+                long tail = (long) LONG_HANDLE.getVolatile(buffer, tailOffset);
+                int tailIndex = (int) tail & mask;
+                int toEnd = capacity - tailIndex;
+                long required = need > toEnd ? (long) toEnd + need : need;
+                if(capacity - (tail - head) < required) {
+                    return -1L;
+                }
+                if(LONG_HANDLE.compareAndSet(buffer, tailOffset, tail, tail + required)) {
+                    if(need > toEnd) {
+                        pad(tailIndex);
+                        return tail + toEnd;
+                    }
+                    return tail;
+                }
+            }
+        }
+    }
+}
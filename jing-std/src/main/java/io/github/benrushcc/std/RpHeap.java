@@ -0,0 +1,142 @@
+package io.github.benrushcc.std;
+
+import java.lang.foreign.MemorySegment;
+
+/// [Mem] backed by an independent rpmalloc first class heap, suitable for per event loop or per request arenas
+///
+/// A heap must only be used by one thread at a time, which is naturally the case for an event loop. All the memory
+/// allocated from the heap could be released at once by [#freeAll()], and the heap itself is handed back to rpmalloc
+/// by [#close()], any later usage throws [IllegalStateException]. Byte usage costs an extra usable size downcall per
+/// operation, so it's only tracked for heaps acquired by [#acquire(boolean)] with trackUsage, and it might be slightly
+/// larger than the requested bytes
+@SuppressWarnings("unused")
+public final class RpHeap implements Mem, AutoCloseable {
+
+    public static RpHeap acquire() {
+        return acquire(false);
+    }
+
+    public static RpHeap acquire(boolean trackUsage) {
+        RpMem.instance();
+        MemorySegment heap = RpMem.RP_MEM_LIB.rpHeapAcquire();
+        if(heap.address() == 0L) {
+            throw new OutOfMemoryError();
+        }
+        return new RpHeap(heap, trackUsage);
+    }
+
+    private final MemorySegment heap;
+    private final boolean trackUsage;
+    private long allocations = 0L;
+    private long used = 0L;
+    private long peak = 0L;
+    private boolean closed = false;
+
+    private RpHeap(MemorySegment h, boolean t) {
+        heap = h;
+        trackUsage = t;
+    }
+
+    /// Number of blocks currently allocated from this heap
+    public long allocations() {
+        return allocations;
+    }
+
+    /// Bytes currently allocated from this heap, always 0 unless usage is tracked
+    public long used() {
+        return used;
+    }
+
+    /// Highest used() observed since the heap was acquired, always 0 unless usage is tracked
+    public long peak() {
+        return peak;
+    }
+
+    private void ensureOpen() {
+        if(closed) {
+            throw new IllegalStateException("RpHeap already closed");
+        }
+    }
+
+    private MemorySegment track(MemorySegment seg, long size) {
+        if(seg.address() != 0L) {
+            allocations++;
+            if(trackUsage) {
+                used += RpMem.RP_MEM_LIB.rpUsableSize(seg);
+                peak = Math.max(peak, used);
+            }
+        }
+        return seg.reinterpret(size);
+    }
+
+    @Override
+    public long alignmentBoundary() {
+        return 16;
+    }
+
+    @Override
+    public MemorySegment allocateMemory(long size) {
+        ensureOpen();
+        return track(RpMem.RP_MEM_LIB.rpHeapMalloc(heap, size), size);
+    }
+
+    @Override
+    public MemorySegment reallocMemory(MemorySegment seg, long newSize) {
+        ensureOpen();
+        long oldSize = trackUsage && seg.address() != 0L ? RpMem.RP_MEM_LIB.rpUsableSize(seg) : 0L;
+        MemorySegment r = RpMem.RP_MEM_LIB.rpHeapRealloc(heap, seg, newSize);
+        if(r.address() != 0L) {
+            if(seg.address() == 0L) {
+                allocations++;
+            }
+            if(trackUsage) {
+                used += RpMem.RP_MEM_LIB.rpUsableSize(r) - oldSize;
+                peak = Math.max(peak, used);
+            }
+        }
+        return r.reinterpret(newSize);
+    }
+
+    @Override
+    public void freeMemory(MemorySegment seg) {
+        ensureOpen();
+        if(seg.address() != 0L) {
+            allocations--;
+            if(trackUsage) {
+                used -= RpMem.RP_MEM_LIB.rpUsableSize(seg);
+            }
+        }
+        RpMem.RP_MEM_LIB.rpHeapFree(heap, seg);
+    }
+
+    @Override
+    public MemorySegment alignedAllocateMemory(long alignment, long size) {
+        ensureOpen();
+        return track(RpMem.RP_MEM_LIB.rpHeapAlignedAlloc(heap, alignment, size), size);
+    }
+
+    @Override
+    public void alignedFreeMemory(MemorySegment seg) {
+        freeMemory(seg);
+    }
+
+    /// Free all the memory allocated from this heap with a single call, every segment allocated before is invalid then
+    public void freeAll() {
+        ensureOpen();
+        RpMem.RP_MEM_LIB.rpHeapFreeAll(heap);
+        allocations = 0L;
+        used = 0L;
+    }
+
+    @Override
+    public void close() {
+        if(closed) {
+            return ;
+        }
+        closed = true;
+        RpMem.RP_MEM_LIB.rpHeapFreeAll(heap);
+        RpMem.RP_MEM_LIB.rpHeapRelease(heap);
+        allocations = 0L;
+        used = 0L;
+    }
+}
@@ -5,20 +5,20 @@ import io.github.benrushcc.lib.LibContext;
 import io.github.benrushcc.std.lib.RpMemLib;
 
 import java.lang.foreign.MemorySegment;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
+/// rpmalloc backed Mem, usable from any platform or virtual thread without explicit initialization
+///
+/// rpmalloc is globally initialized once on the first [#instance()] call, the per thread heaps are bound to the
+/// carrier threads lazily by the native side on their first allocation, and are never finalized since carrier threads
+/// live as long as their scheduler
 @SuppressWarnings("unused")
 public final class RpMem {
     private RpMem() {
         Utils.unsupportedInstantiated();
     }
 
-    private static final Lock lock = new ReentrantLock();
-
-    private static int state = 0;
-
-    private static final RpMemLib RP_MEM_LIB = LibContext.acquire(RpMemLib.class);
+    static final RpMemLib RP_MEM_LIB = LibContext.acquire(RpMemLib.class);
 
     private static final Mem MEM = new Mem() {
         @Override
@@ -52,32 +52,48 @@ public final class RpMem {
         }
     };
 
-    public static Mem rpInitialize() {
-        lock.lock();
-        try {
-            if(state++ == 0) {
-                int r = RP_MEM_LIB.rpInitialize();
-                if(r < 0) {
-                    throw new RuntimeException("Failed to initialize RpMem");
-                }
-            }
-            RP_MEM_LIB.rpThreadInitialize();
-            return MEM;
-        } finally {
-            lock.unlock();
+    private static final Supplier<Mem> MEM_SUPPLIER = StableValue.supplier(() -> {
+        if(RP_MEM_LIB.rpInitialize() < 0) {
+            throw new RuntimeException("Failed to initialize RpMem");
         }
+        return MEM;
+    });
+
+    public static Mem instance() {
+        return MEM_SUPPLIER.get();
     }
 
+    /// Kept for compatibility, thread initialization is now performed lazily
+    @Deprecated
+    public static Mem rpInitialize() {
+        return instance();
+    }
+
+    /// Release the heap of the current OS thread back to the global caches, for platform threads about to exit, it
+    /// would be re-initialized if the thread allocates again
+    public static void rpThreadFinalize() {
+        RP_MEM_LIB.rpThreadFinalize();
+    }
+
+    /// Kept for compatibility, but its meaning has changed: it used to finalize rpmalloc globally once the last
+    /// [#rpInitialize()] was paired, now it only releases the heap of the current OS thread like [#rpThreadFinalize()].
+    /// rpmalloc is never globally finalized, since other carriers might still allocate and [#instance()] initializes
+    /// it only once
+    @Deprecated
     public static void rpFinalize() {
-        lock.lock();
-        try {
-            RpMemLib lib = RP_MEM_LIB;
-            lib.rpThreadFinalize();
-            if(--state == 0) {
-                lib.rpFinalize();
-            }
-        } finally {
-            lock.unlock();
-        }
+        rpThreadFinalize();
+    }
+
+    /// Global rpmalloc statistics in bytes, most of them stay zero unless the native library is built with
+    /// ENABLE_STATISTICS
+    public record Statistics(long mapped, long mappedPeak, long cached, long hugeAlloc, long hugeAllocPeak, long mappedTotal, long unmappedTotal) {
+
+    }
+
+    public static Statistics globalStatistics() {
+        long[] stats = new long[7];
+        instance();
+        RP_MEM_LIB.rpGlobalStatistics(MemorySegment.ofArray(stats));
+        return new Statistics(stats[0], stats[1], stats[2], stats[3], stats[4], stats[5], stats[6]);
     }
 }
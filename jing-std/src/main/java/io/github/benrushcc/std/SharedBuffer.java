@@ -0,0 +1,162 @@
+package io.github.benrushcc.std;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.LongAdder;
+
+/// Reference-counted read-only off-heap buffer, the memory would be freed through the originating Mem once the count
+/// drops to zero. Slices share the count of their parent, so one encoded message could be handed to many consumers
+/// with a retain() per consumer instead of a copy per consumer
+///
+/// When leak detection is enabled by `jing.sharedBuffer.leakDetection`, or the buffer is sampled by [LeakDetector],
+/// buffers becoming unreachable before being released would be reported with the stack trace of their allocation, the
+/// leaked memory is not freed since raw views of it might still be in use
+@SuppressWarnings("unused")
+public final class SharedBuffer implements AutoCloseable {
+
+    private static final boolean LEAK_DETECTION = Boolean.getBoolean("jing.sharedBuffer.leakDetection");
+
+    private static final LongAdder LIVE = new LongAdder();
+
+    private static final LongAdder LEAKED = new LongAdder();
+
+    /// Take the ownership of memory allocated from mem, the count starts from one
+    public static SharedBuffer wrap(Mem mem, MemorySegment memory) {
+        if(!memory.isNative() || memory.address() == 0L) {
+            throw new IllegalArgumentException("SharedBuffer requires a native segment");
+        }
+        Ref ref = new Ref(mem, memory);
+        return new SharedBuffer(ref, memory.asReadOnly());
+    }
+
+    /// Copy the content of src into memory allocated from mem
+    public static SharedBuffer copyOf(Mem mem, MemorySegment src) {
+        long size = Math.max(src.byteSize(), 1L);
+        MemorySegment memory = mem.allocateMemory(size);
+        if(memory.address() == 0L) {
+            throw new OutOfMemoryError();
+        }
+        MemorySegment.copy(src, 0L, memory, 0L, src.byteSize());
+        return wrap(mem, memory.asSlice(0L, src.byteSize()));
+    }
+
+    /// Number of buffers allocated but not yet freed, only tracked when leak detection is enabled or sampled
+    public static long live() {
+        return LIVE.sum();
+    }
+
+    /// Number of buffers reported as leaked, only tracked when leak detection is enabled or sampled
+    public static long leaked() {
+        return LEAKED.sum();
+    }
+
+    private final Ref ref;
+    private final MemorySegment segment;
+
+    private SharedBuffer(Ref r, MemorySegment m) {
+        ref = r;
+        segment = m;
+    }
+
+    /// Read-only view of the buffer, which must not be accessed after the buffer is released
+    public MemorySegment segment() {
+        if(ref.count <= 0) {
+            throw new IllegalStateException("SharedBuffer already released");
+        }
+        return segment;
+    }
+
+    public long byteSize() {
+        return segment.byteSize();
+    }
+
+    public int refCount() {
+        return ref.count;
+    }
+
+    /// Increase the shared count by one
+    public SharedBuffer retain() {
+        ref.retain();
+        return this;
+    }
+
+    /// Decrease the shared count by one, return true if the memory was freed by this call
+    public boolean release() {
+        return ref.release();
+    }
+
+    /// Slice sharing the count of this buffer, no retain() is performed
+    public SharedBuffer slice(long offset, long len) {
+        return new SharedBuffer(ref, segment().asSlice(offset, len));
+    }
+
+    /// Slice sharing the count of this buffer, with the count increased by one for it
+    public SharedBuffer retainedSlice(long offset, long len) {
+        SharedBuffer r = slice(offset, len);
+        ref.retain();
+        return r;
+    }
+
+    /// Same as release(), for try-with-resources
+    @Override
+    public void close() {
+        release();
+    }
+
+    private static final class Ref {
+        private static final VarHandle COUNT;
+
+        static {
+            try {
+                COUNT = MethodHandles.lookup().findVarHandle(Ref.class, "count", int.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final Mem mem;
+        private final MemorySegment memory;
+        private final LeakDetector.Leak leak;
+        private volatile int count = 1;
+
+        Ref(Mem m, MemorySegment segment) {
+            mem = m;
+            memory = segment;
+            leak = LEAK_DETECTION ? LeakDetector.track(this, "SharedBuffer", LEAKED) : LeakDetector.sample(this, "SharedBuffer", LEAKED);
+            if(leak != null) {
+                LIVE.increment();
+            }
+        }
+
+        void retain() {
+            // never resurrect a released buffer
+            for( ; ; ) {
+                int c = count;
+                if(c <= 0) {
+                    throw new IllegalStateException("SharedBuffer already released");
+                }
+                if(COUNT.weakCompareAndSet(this, c, c + 1)) {
+                    return ;
+                }
+            }
+        }
+
+        boolean release() {
+            int c = (int) COUNT.getAndAdd(this, -1);
+            if(c > 1) {
+                return false;
+            } else if(c == 1) {
+                mem.freeMemory(memory);
+                if(leak != null) {
+                    leak.close();
+                    LIVE.decrement();
+                }
+                return true;
+            } else {
+                COUNT.getAndAdd(this, 1);
+                throw new IllegalStateException("SharedBuffer already released");
+            }
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package io.github.benrushcc.std;
+
+import java.lang.foreign.MemorySegment;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/// Thread-cached slab allocator on top of another [Mem]
+///
+/// Requests no larger than `jing.slabMem.max.size` are served from power-of-two size classes carved out of chunks of
+/// `jing.slabMem.chunk.size` bytes, freed blocks are kept in striped per-thread caches and a shared depot, so only chunk
+/// refills and oversize requests would reach the underlying Mem. Chunks are aligned to their own size, which makes every
+/// block naturally aligned to its size class, and are only returned to the underlying Mem when the SlabMem is closed.
+/// Once closed, allocations throw [IllegalStateException] and freeing a slab block is a no-op
+@SuppressWarnings("unused")
+public final class SlabMem implements Mem, AutoCloseable {
+
+    private static final long CHUNK_SIZE = roundUp(Long.getLong("jing.slabMem.chunk.size", 1L << 20));
+
+    private static final long MAX_SIZE = Math.clamp(roundUp(Long.getLong("jing.slabMem.max.size", 1L << 16)), 1L << 4, CHUNK_SIZE);
+
+    private static final int CACHE_SIZE = Math.max(Integer.getInteger("jing.slabMem.cache.size", 32), 2);
+
+    private static final int MIN_SHIFT = 4;
+
+    private static final int CLASSES = Long.numberOfTrailingZeros(MAX_SIZE) - MIN_SHIFT + 1;
+
+    private static final int STRIPE_SHIFT = Math.max(1, Long.numberOfTrailingZeros(roundUp(Runtime.getRuntime().availableProcessors())));
+
+    public static SlabMem of(Mem mem) {
+        return new SlabMem(mem);
+    }
+
+    private final Mem mem;
+    private final Stripe[] stripes = new Stripe[1 << STRIPE_SHIFT];
+    private final Depot[] depots = new Depot[CLASSES];
+    private final Lock chunkLock = new ReentrantLock();
+    private volatile Chunks chunks = new Chunks(new long[0], new int[0]);
+    private volatile boolean closed = false;
+
+    private SlabMem(Mem m) {
+        mem = m;
+        for(int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+        for(int i = 0; i < depots.length; i++) {
+            depots[i] = new Depot(i);
+        }
+    }
+
+    private static long roundUp(long size) {
+        if(size <= 1L) {
+            return 1L;
+        }
+        long r = Long.highestOneBit(size - 1L) << 1;
+        if(r < 0L) {
+            throw new ArithmeticException("Size overflow");
+        }
+        return r;
+    }
+
+    private static int sizeClass(long size) {
+        return size <= (1L << MIN_SHIFT) ? 0 : Long.SIZE - Long.numberOfLeadingZeros(size - 1L) - MIN_SHIFT;
+    }
+
+    private static long classSize(int sizeClass) {
+        return 1L << (sizeClass + MIN_SHIFT);
+    }
+
+    /// Chunk base addresses in ascending order, together with the size class they serve, replaced on write
+    private record Chunks(long[] bases, int[] classes) {
+        int lookup(long address) {
+            int index = Arrays.binarySearch(bases, address & -CHUNK_SIZE);
+            return index < 0 ? -1 : classes[index];
+        }
+    }
+
+    private static final class Stripe {
+        private final AtomicBoolean owned = new AtomicBoolean(false);
+        private final long[][] blocks = new long[CLASSES][CACHE_SIZE];
+        private final int[] counts = new int[CLASSES];
+
+        boolean tryAcquire() {
+            return !owned.compareAndExchangeAcquire(false, true);
+        }
+
+        void release() {
+            owned.setRelease(false);
+        }
+
+        /// Drop all the cached blocks, spinning until the stripe is owned
+        void clear() {
+            while (!tryAcquire()) {
+                Thread.onSpinWait();
+            }
+            try {
+                Arrays.fill(counts, 0);
+            } finally {
+                release();
+            }
+        }
+    }
+
+    private final class Depot {
+        private final Lock lock = new ReentrantLock();
+        private final int sizeClass;
+        private long[] blocks = new long[CACHE_SIZE];
+        private int count = 0;
+        private long next = 0L;
+        private long end = 0L;
+
+        Depot(int c) {
+            sizeClass = c;
+        }
+
+        /// Take one block from the depot, carving a new chunk if necessary, must be called with lock held
+        long take() {
+            if(count > 0) {
+                return blocks[--count];
+            }
+            long size = classSize(sizeClass);
+            if(next == end) {
+                long chunk = newChunk(sizeClass);
+                if(chunk == 0L) {
+                    return 0L;
+                }
+                next = chunk;
+                end = chunk + CHUNK_SIZE;
+            }
+            long r = next;
+            next = r + size;
+            return r;
+        }
+
+        /// Put one block back to the depot, must be called with lock held
+        void put(long address) {
+            if(count == blocks.length) {
+                blocks = Arrays.copyOf(blocks, Math.multiplyExact(count, 2));
+            }
+            blocks[count++] = address;
+        }
+
+        /// Drop all the cached blocks and the chunk being carved
+        void clear() {
+            lock.lock();
+            try {
+                count = 0;
+                next = 0L;
+                end = 0L;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private Stripe stripe() {
+        long id = Thread.currentThread().threadId();
+        return stripes[(int) ((id * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - STRIPE_SHIFT))];
+    }
+
+    private long newChunk(int sizeClass) {
+        chunkLock.lock();
+        try {
+            if(closed) {
+                throw new IllegalStateException("SlabMem already closed");
+            }
+            long base = mem.alignedAllocateMemory(CHUNK_SIZE, CHUNK_SIZE).address();
+            if(base == 0L) {
+                return 0L;
+            }
+            Chunks current = chunks;
+            int index = -(Arrays.binarySearch(current.bases(), base) + 1);
+            int len = current.bases().length;
+            long[] bases = new long[len + 1];
+            int[] classes = new int[len + 1];
+            System.arraycopy(current.bases(), 0, bases, 0, index);
+            System.arraycopy(current.classes(), 0, classes, 0, index);
+            bases[index] = base;
+            classes[index] = sizeClass;
+            System.arraycopy(current.bases(), index, bases, index + 1, len - index);
+            System.arraycopy(current.classes(), index, classes, index + 1, len - index);
+            chunks = new Chunks(bases, classes);
+            return base;
+        } finally {
+            chunkLock.unlock();
+        }
+    }
+
+    private long acquire(int sizeClass) {
+        Stripe stripe = stripe();
+        if(stripe.tryAcquire()) {
+            try {
+                int count = stripe.counts[sizeClass];
+                long[] blocks = stripe.blocks[sizeClass];
+                if(count == 0) {
+                    // refill half of the stripe cache in one go
+                    Depot depot = depots[sizeClass];
+                    depot.lock.lock();
+                    try {
+                        while (count < (CACHE_SIZE >> 1)) {
+                            long address = depot.take();
+                            if(address == 0L) {
+                                break;
+                            }
+                            blocks[count++] = address;
+                        }
+                    } finally {
+                        depot.lock.unlock();
+                    }
+                    if(count == 0) {
+                        return 0L;
+                    }
+                }
+                stripe.counts[sizeClass] = --count;
+                return blocks[count];
+            } finally {
+                stripe.release();
+            }
+        }
+        // stripe contended, go through the depot directly
+        Depot depot = depots[sizeClass];
+        depot.lock.lock();
+        try {
+            return depot.take();
+        } finally {
+            depot.lock.unlock();
+        }
+    }
+
+    private void release(int sizeClass, long address) {
+        Stripe stripe = stripe();
+        if(stripe.tryAcquire()) {
+            try {
+                int count = stripe.counts[sizeClass];
+                long[] blocks = stripe.blocks[sizeClass];
+                if(count == CACHE_SIZE) {
+                    // flush half of the stripe cache back to the depot
+                    Depot depot = depots[sizeClass];
+                    depot.lock.lock();
+                    try {
+                        while (count > (CACHE_SIZE >> 1)) {
+                            depot.put(blocks[--count]);
+                        }
+                    } finally {
+                        depot.lock.unlock();
+                    }
+                }
+                blocks[count++] = address;
+                stripe.counts[sizeClass] = count;
+                return ;
+            } finally {
+                stripe.release();
+            }
+        }
+        // stripe contended, go through the depot directly
+        Depot depot = depots[sizeClass];
+        depot.lock.lock();
+        try {
+            depot.put(address);
+        } finally {
+            depot.lock.unlock();
+        }
+    }
+
+    @Override
+    public long alignmentBoundary() {
+        return mem.alignmentBoundary();
+    }
+
+    private void ensureOpen() {
+        if(closed) {
+            throw new IllegalStateException("SlabMem already closed");
+        }
+    }
+
+    @Override
+    public MemorySegment allocateMemory(long size) {
+        ensureOpen();
+        if(size > MAX_SIZE) {
+            return mem.allocateMemory(size);
+        }
+        long address = acquire(sizeClass(size));
+        return address == 0L ? MemorySegment.NULL : MemorySegment.ofAddress(address).reinterpret(size);
+    }
+
+    @Override
+    public MemorySegment reallocMemory(MemorySegment seg, long newSize) {
+        long address = seg.address();
+        ensureOpen();
+        if(address == 0L) {
+            return allocateMemory(newSize);
+        }
+        int sizeClass = chunks.lookup(address);
+        if(sizeClass < 0) {
+            // oversize blocks always stay in the underlying mem
+            return mem.reallocMemory(seg, newSize);
+        }
+        long capacity = classSize(sizeClass);
+        if(newSize <= capacity) {
+            return MemorySegment.ofAddress(address).reinterpret(newSize);
+        }
+        MemorySegment newSegment = allocateMemory(newSize);
+        if(newSegment.address() != 0L) {
+            MemorySegment old = MemorySegment.ofAddress(address).reinterpret(capacity);
+            if(capacity >= MemAccess.MEMCPY_THRESHOLD) {
+                MemAccess.memcpy(old, 0L, newSegment, 0L, capacity);
+            } else {
+                MemorySegment.copy(old, 0L, newSegment, 0L, capacity);
+            }
+            release(sizeClass, address);
+        }
+        return newSegment;
+    }
+
+    @Override
+    public void freeMemory(MemorySegment seg) {
+        long address = seg.address();
+        if(address == 0L) {
+            return ;
+        }
+        int sizeClass = chunks.lookup(address);
+        if(sizeClass < 0) {
+            mem.freeMemory(seg);
+        } else if(!closed) {
+            release(sizeClass, address);
+        }
+    }
+
+    @Override
+    public MemorySegment alignedAllocateMemory(long alignment, long size) {
+        ensureOpen();
+        // blocks are naturally aligned to their size class
+        long required = Math.max(alignment, size);
+        if(required > MAX_SIZE) {
+            return mem.alignedAllocateMemory(alignment, size);
+        }
+        long address = acquire(sizeClass(required));
+        return address == 0L ? MemorySegment.NULL : MemorySegment.ofAddress(address).reinterpret(size);
+    }
+
+    @Override
+    public void alignedFreeMemory(MemorySegment seg) {
+        long address = seg.address();
+        if(address == 0L) {
+            return ;
+        }
+        int sizeClass = chunks.lookup(address);
+        if(sizeClass < 0) {
+            mem.alignedFreeMemory(seg);
+        } else if(!closed) {
+            release(sizeClass, address);
+        }
+    }
+
+    /// Return all the chunks to the underlying mem, oversize blocks still need to be freed by their owners. The chunk
+    /// addresses are kept, so blocks freed after closing are still recognized and never reach the underlying mem
+    @Override
+    public void close() {
+        chunkLock.lock();
+        try {
+            if(closed) {
+                return ;
+            }
+            closed = true;
+        } finally {
+            chunkLock.unlock();
+        }
+        // no chunk could be added once closed, and a refill waiting for chunkLock would fail instead of holding its stripe
+        for (Stripe stripe : stripes) {
+            stripe.clear();
+        }
+        for (Depot depot : depots) {
+            depot.clear();
+        }
+        for (long base : chunks.bases()) {
+            mem.alignedFreeMemory(MemorySegment.ofAddress(base));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package io.github.benrushcc.std;
+
+import io.github.benrushcc.common.Utils;
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/// UTF-8 codec working on segments directly, malformed surrogates are replaced with '?' just like the JDK encoder
+final class Utf8 {
+    private Utf8() {
+        Utils.unsupportedInstantiated();
+    }
+
+    /// Chars copied out of a String per batch
+    static final int BATCH_SIZE = 256;
+
+    private static final VectorSpecies<Short> CHAR_SPECIES = ShortVector.SPECIES_PREFERRED.vectorBitSize() >= 128 ? ShortVector.SPECIES_PREFERRED : ShortVector.SPECIES_128;
+
+    private static final VectorSpecies<Byte> ASCII_SPECIES = VectorSpecies.of(byte.class, VectorShape.forBitSize(CHAR_SPECIES.vectorBitSize() >> 1));
+
+    private static final byte REPLACEMENT = (byte) '?';
+
+    /// Number of bytes the string would take when encoded
+    static long encodedLength(String str) {
+        final int len = str.length();
+        long r = len;
+        for(int i = 0; i < len; i++) {
+            char c = str.charAt(i);
+            if(c < 0x80) {
+                continue;
+            }
+            if(c < 0x800) {
+                r += 1;
+            } else if(Character.isSurrogate(c)) {
+                if(Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(str.charAt(i + 1))) {
+                    r += 2;
+                    i++;
+                }
+            } else {
+                r += 2;
+            }
+        }
+        return r;
+    }
+
+    /// Encode the string into the segment at offset, the segment must have at least `encodedLength(str)` bytes
+    /// writable, returning the number of bytes written
+    static long encode(String str, MemorySegment segment, long offset, char[] batch) {
+        final int len = str.length();
+        long index = offset;
+        int i = 0;
+        while (i < len) {
+            int n = Math.min(batch.length, len - i);
+            str.getChars(i, i + n, batch, 0);
+            // never split a surrogate pair between batches
+            if(i + n < len && Character.isHighSurrogate(batch[n - 1])) {
+                n--;
+            }
+            int j = 0;
+            while (j < n) {
+                if(j + CHAR_SPECIES.length() <= n) {
+                    ShortVector vec = ShortVector.fromCharArray(CHAR_SPECIES, batch, j);
+                    if(vec.lanewise(VectorOperators.AND, (short) 0xFF80).eq((short) 0).allTrue()) {
+                        ((ByteVector) vec.convertShape(VectorOperators.S2B, ASCII_SPECIES, 0)).intoMemorySegment(segment, index, ByteOrder.nativeOrder());
+                        index += CHAR_SPECIES.length();
+                        j += CHAR_SPECIES.length();
+                        continue;
+                    }
+                }
+                int bound = Math.min(n, j + CHAR_SPECIES.length());
+                while (j < bound) {
+                    char c = batch[j++];
+                    if(c < 0x80) {
+                        MemAccess.setByte(segment, index++, (byte) c);
+                    } else if(c < 0x800) {
+                        MemAccess.setByte(segment, index++, (byte) (0xC0 | (c >> 6)));
+                        MemAccess.setByte(segment, index++, (byte) (0x80 | (c & 0x3F)));
+                    } else if(Character.isSurrogate(c)) {
+                        if(Character.isHighSurrogate(c) && j < n && Character.isLowSurrogate(batch[j])) {
+                            int cp = Character.toCodePoint(c, batch[j++]);
+                            MemAccess.setByte(segment, index++, (byte) (0xF0 | (cp >> 18)));
+                            MemAccess.setByte(segment, index++, (byte) (0x80 | ((cp >> 12) & 0x3F)));
+                            MemAccess.setByte(segment, index++, (byte) (0x80 | ((cp >> 6) & 0x3F)));
+                            MemAccess.setByte(segment, index++, (byte) (0x80 | (cp & 0x3F)));
+                        } else {
+                            MemAccess.setByte(segment, index++, REPLACEMENT);
+                        }
+                    } else {
+                        MemAccess.setByte(segment, index++, (byte) (0xE0 | (c >> 12)));
+                        MemAccess.setByte(segment, index++, (byte) (0x80 | ((c >> 6) & 0x3F)));
+                        MemAccess.setByte(segment, index++, (byte) (0x80 | (c & 0x3F)));
+                    }
+                }
+            }
+            i += n;
+        }
+        return index - offset;
+    }
+
+    /// Decode len bytes from the segment at offset, using bytes as the intermediate storage
+    static String decode(MemorySegment segment, long offset, int len, byte[] bytes) {
+        MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, offset, bytes, 0, len);
+        return new String(bytes, 0, len, StandardCharsets.UTF_8);
+    }
+}
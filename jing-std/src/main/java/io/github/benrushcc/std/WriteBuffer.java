@@ -1,14 +1,20 @@
 package io.github.benrushcc.std;
 
+import io.github.benrushcc.std.jfr.BufferGrowthEvent;
+
 import java.lang.foreign.MemorySegment;
 import java.lang.foreign.ValueLayout;
 import java.nio.ByteOrder;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
-public abstract sealed class WriteBuffer implements AutoCloseable permits WriteBuffer.NativeWriteBuffer, WriteBuffer.ReservedWriteBuffer, WriteBuffer.HeapWriteBuffer {
+public abstract sealed class WriteBuffer implements AutoCloseable permits WriteBuffer.NativeWriteBuffer, WriteBuffer.ReservedWriteBuffer, WriteBuffer.HeapWriteBuffer, WriteBuffer.PooledWriteBuffer, WriteBuffer.ChunkedWriteBuffer {
 
     private static final long DEFAULT_NATIVE_BUFFER_SIZE = Long.getLong("jing.writeBuffer.native.size", 4096L);
 
+    private static final long DEFAULT_CHUNK_SIZE = Long.getLong("jing.writeBuffer.chunk.size", 65536L);
+
     private static final int DEFAULT_HEAP_BUFFER_SIZE = Integer.getInteger("jing.writeBuffer.heap.size", 4096);
 
     public static WriteBuffer nativeBuffer(Mem m, long size) {
@@ -23,6 +29,22 @@ public abstract sealed class WriteBuffer implements AutoCloseable permits WriteB
         return new ReservedWriteBuffer(m, segment);
     }
 
+    /// Create a WriteBuffer appending fixed-size chunks instead of reallocating, use `contents()` to fetch its content
+    public static WriteBuffer chunked(Mem m, long chunkSize) {
+        if(chunkSize <= 0L) {
+            throw new IllegalArgumentException("Chunk size must be greater than zero");
+        }
+        return new ChunkedWriteBuffer(m, chunkSize);
+    }
+
+    public static WriteBuffer chunked(Mem m) {
+        return new ChunkedWriteBuffer(m, DEFAULT_CHUNK_SIZE);
+    }
+
+    static PooledWriteBuffer pooled(WriteBufferPool pool, Mem m, long size) {
+        return new PooledWriteBuffer(pool, m, size);
+    }
+
     public static WriteBuffer heap(int size) {
         return new HeapWriteBuffer(size);
     }
@@ -33,69 +55,219 @@ public abstract sealed class WriteBuffer implements AutoCloseable permits WriteB
 
     protected MemorySegment segment = MemorySegment.NULL;
     protected long writeIndex = 0L;
+    private char[] chars;
 
+    /// Return a segment that could hold at least nextIndex bytes, implementations that don't keep all the content in one
+    /// segment could also move writeIndex, so callers must always fetch writeIndex after resizing
     abstract MemorySegment resize(long nextIndex);
 
+    /// Resize through the implementation, the growth would be reported as a JFR event when enabled
+    final MemorySegment expand(long nextIndex) {
+        long oldCapacity = segment.byteSize();
+        MemorySegment newSegment = resize(nextIndex);
+        BufferGrowthEvent event = new BufferGrowthEvent();
+        if(event.shouldCommit()) {
+            event.bufferType = getClass().getSimpleName();
+            event.oldCapacity = oldCapacity;
+            event.newCapacity = newSegment.byteSize();
+            event.commit();
+        }
+        return newSegment;
+    }
+
+    /// Make room for len more bytes, returning the index where they should be written
+    private long prepare(long len) {
+        long nextIndex = Math.addExact(writeIndex, len);
+        if(nextIndex > segment.byteSize()) {
+            segment = expand(nextIndex);
+        }
+        return writeIndex;
+    }
+
     @Override
     public abstract void close();
 
-    public void writeByte(byte b) {
-        long nextIndex = Math.addExact(writeIndex, ValueLayout.JAVA_BYTE.byteSize());
-        if(nextIndex > segment.byteSize()) {
-            segment = resize(nextIndex);
+    /// Transfer the written content to a ReadBuffer without copying, the ReadBuffer would own the backing memory and
+    /// free it when closed, while this WriteBuffer would be reset to empty and could still be written or closed
+    ///
+    /// The owned memory is guarded by a shared Arena so the ReadBuffer could be handed to other threads, closing it
+    /// costs a handshake with every thread in the JVM, use [#toReadBuffer(boolean)] for single-thread handoff
+    public ReadBuffer toReadBuffer() {
+        return toReadBuffer(true);
+    }
+
+    /// Transfer the written content to a ReadBuffer, if shared is false the owned memory is guarded by a confined
+    /// Arena instead, which is cheap to close, but the ReadBuffer and its slices could then only be accessed and closed
+    /// by the current thread
+    public ReadBuffer toReadBuffer(boolean shared) {
+        if(writeIndex() == 0L) {
+            throw new IllegalStateException("Nothing written");
         }
-        MemAccess.setByte(segment, writeIndex, b);
-        writeIndex = nextIndex;
+        return transfer(shared);
     }
 
-    public void writeBytes(byte b1, byte b2) {
-        long nextIndex = Math.addExact(writeIndex, Math.multiplyExact(ValueLayout.JAVA_BYTE.byteSize(), 2));
-        if(nextIndex > segment.byteSize()) {
-            segment = resize(nextIndex);
+    abstract ReadBuffer transfer(boolean shared);
+
+    /// Hand the current segment over to a ReadBuffer which would free it through mem
+    final ReadBuffer transfer(Mem mem, boolean shared) {
+        MemorySegment m = segment;
+        MemorySegment content = segment.asSlice(0L, writeIndex);
+        segment = MemorySegment.NULL;
+        writeIndex = 0L;
+        return ReadBuffer.owned(List.of(content), () -> mem.freeMemory(m), shared);
+    }
+
+    /// Number of bytes written so far
+    public long writeIndex() {
+        return writeIndex;
+    }
+
+    /// Make sure len bytes could be written contiguously, returning a window over them, codecs could write into the
+    /// window with plain offsets and commit the written bytes at the end
+    public MemorySegment ensureWritable(long len) {
+        if(len < 0L) {
+            throw new IllegalArgumentException("Length must not be negative");
         }
-        MemAccess.setByte(segment, writeIndex, b1);
-        MemAccess.setByte(segment, Math.addExact(writeIndex, ValueLayout.JAVA_BYTE.byteSize()), b2);
-        writeIndex = nextIndex;
+        long index = prepare(len);
+        return segment.asSlice(index, len);
     }
 
-    public void writeBytes(byte b1, byte b2, byte b3) {
-        long nextIndex = Math.addExact(writeIndex, Math.multiplyExact(ValueLayout.JAVA_BYTE.byteSize(), 3));
-        if(nextIndex > segment.byteSize()) {
-            segment = resize(nextIndex);
+    /// Commit len bytes written through the window returned by ensureWritable
+    public void commit(long len) {
+        if(len < 0L || len > segment.byteSize() - writeIndex) {
+            throw new IndexOutOfBoundsException("Commit length exceeds the writable window");
         }
-        MemAccess.setByte(segment, writeIndex, b1);
-        MemAccess.setByte(segment, Math.addExact(writeIndex, ValueLayout.JAVA_BYTE.byteSize()), b2);
-        MemAccess.setByte(segment, Math.addExact(writeIndex, Math.multiplyExact(ValueLayout.JAVA_BYTE.byteSize(), 2)), b3);
-        writeIndex = nextIndex;
+        writeIndex += len;
     }
 
-    public void writeBytes(byte[] bytes, int off, int len) {
-        long nextIndex = Math.addExact(writeIndex, len);
-        if(nextIndex > segment.byteSize()) {
-            segment = resize(nextIndex);
+    /// Reserve len zeroed bytes to be filled afterwards with the set methods, return the position of them, which stays
+    /// valid no matter how the buffer grows later
+    public long reserve(int len) {
+        if(len < 0) {
+            throw new IllegalArgumentException("Reserved length must not be negative");
+        }
+        long index = prepare(len);
+        segment.asSlice(index, len).fill((byte) 0);
+        writeIndex = index + len;
+        return writeIndex() - len;
+    }
+
+    /// Return a view of len written bytes at position, or null if they are not contiguous in memory
+    MemorySegment patch(long position, int len) {
+        checkPatch(position, len);
+        return segment.asSlice(position, len);
+    }
+
+    final void checkPatch(long position, int len) {
+        if(position < 0L || Math.addExact(position, len) > writeIndex()) {
+            throw new IndexOutOfBoundsException("Position: " + position + ", Written: " + writeIndex());
+        }
+    }
+
+    /// Copy the bytes to position one by one, each single byte is always contiguous
+    private void scatter(long position, MemorySegment src) {
+        for(long i = 0L; i < src.byteSize(); i++) {
+            MemAccess.setByte(patch(position + i, Byte.BYTES), 0L, MemAccess.getByte(src, i));
+        }
+    }
+
+    public void setByte(long position, byte b) {
+        MemAccess.setByte(patch(position, Byte.BYTES), 0L, b);
+    }
+
+    public void setShort(long position, short s, ByteOrder byteOrder) {
+        MemorySegment m = patch(position, Short.BYTES);
+        if(m != null) {
+            MemAccess.setShort(m, 0L, s, byteOrder);
+        } else {
+            MemorySegment tmp = MemorySegment.ofArray(new byte[Short.BYTES]);
+            MemAccess.setShort(tmp, 0L, s, byteOrder);
+            scatter(position, tmp);
+        }
+    }
+
+    public void setShort(long position, short s) {
+        setShort(position, s, ByteOrder.nativeOrder());
+    }
+
+    public void setInt(long position, int i, ByteOrder byteOrder) {
+        MemorySegment m = patch(position, Integer.BYTES);
+        if(m != null) {
+            MemAccess.setInt(m, 0L, i, byteOrder);
+        } else {
+            MemorySegment tmp = MemorySegment.ofArray(new byte[Integer.BYTES]);
+            MemAccess.setInt(tmp, 0L, i, byteOrder);
+            scatter(position, tmp);
+        }
+    }
+
+    public void setInt(long position, int i) {
+        setInt(position, i, ByteOrder.nativeOrder());
+    }
+
+    public void setLong(long position, long l, ByteOrder byteOrder) {
+        MemorySegment m = patch(position, Long.BYTES);
+        if(m != null) {
+            MemAccess.setLong(m, 0L, l, byteOrder);
+        } else {
+            MemorySegment tmp = MemorySegment.ofArray(new byte[Long.BYTES]);
+            MemAccess.setLong(tmp, 0L, l, byteOrder);
+            scatter(position, tmp);
         }
+    }
+
+    public void setLong(long position, long l) {
+        setLong(position, l, ByteOrder.nativeOrder());
+    }
+
+    public void writeByte(byte b) {
+        long index = prepare(ValueLayout.JAVA_BYTE.byteSize());
+        MemAccess.setByte(segment, index, b);
+        writeIndex = index + ValueLayout.JAVA_BYTE.byteSize();
+    }
+
+    public void writeBytes(byte b1, byte b2) {
+        long index = prepare(Math.multiplyExact(ValueLayout.JAVA_BYTE.byteSize(), 2));
+        MemAccess.setByte(segment, index, b1);
+        MemAccess.setByte(segment, index + ValueLayout.JAVA_BYTE.byteSize(), b2);
+        writeIndex = index + Math.multiplyExact(ValueLayout.JAVA_BYTE.byteSize(), 2);
+    }
+
+    public void writeBytes(byte b1, byte b2, byte b3) {
+        long index = prepare(Math.multiplyExact(ValueLayout.JAVA_BYTE.byteSize(), 3));
+        MemAccess.setByte(segment, index, b1);
+        MemAccess.setByte(segment, index + ValueLayout.JAVA_BYTE.byteSize(), b2);
+        MemAccess.setByte(segment, index + Math.multiplyExact(ValueLayout.JAVA_BYTE.byteSize(), 2), b3);
+        writeIndex = index + Math.multiplyExact(ValueLayout.JAVA_BYTE.byteSize(), 3);
+    }
+
+    public void writeBytes(byte b1, byte b2, byte b3, byte b4) {
+        long index = prepare(Math.multiplyExact(ValueLayout.JAVA_BYTE.byteSize(), 4));
+        MemAccess.setByte(segment, index, b1);
+        MemAccess.setByte(segment, index + ValueLayout.JAVA_BYTE.byteSize(), b2);
+        MemAccess.setByte(segment, index + Math.multiplyExact(ValueLayout.JAVA_BYTE.byteSize(), 2), b3);
+        MemAccess.setByte(segment, index + Math.multiplyExact(ValueLayout.JAVA_BYTE.byteSize(), 3), b4);
+        writeIndex = index + Math.multiplyExact(ValueLayout.JAVA_BYTE.byteSize(), 4);
+    }
+
+    public void writeBytes(byte[] bytes, int off, int len) {
         MemorySegment src = MemorySegment.ofArray(bytes).asSlice(off, len);
-        MemorySegment.copy(src, 0L, segment, writeIndex, len);
-        writeIndex = nextIndex;
+        long index = prepare(len);
+        MemorySegment.copy(src, 0L, segment, index, len);
+        writeIndex = index + len;
     }
 
     public void writeBytes(byte[] bytes) {
-        long nextIndex = Math.addExact(writeIndex, bytes.length);
-        if(nextIndex > segment.byteSize()) {
-            segment = resize(nextIndex);
-        }
         MemorySegment src = MemorySegment.ofArray(bytes);
-        MemorySegment.copy(src, 0L, segment, writeIndex, bytes.length);
-        writeIndex = nextIndex;
+        long index = prepare(bytes.length);
+        MemorySegment.copy(src, 0L, segment, index, bytes.length);
+        writeIndex = index + bytes.length;
     }
 
     public void writeShort(short s, ByteOrder byteOrder) {
-        long nextIndex = Math.addExact(writeIndex, ValueLayout.JAVA_SHORT.byteSize());
-        if(nextIndex > segment.byteSize()) {
-            segment = resize(nextIndex);
-        }
-        MemAccess.setShort(segment, writeIndex, s, byteOrder);
-        writeIndex = nextIndex;
+        long index = prepare(ValueLayout.JAVA_SHORT.byteSize());
+        MemAccess.setShort(segment, index, s, byteOrder);
+        writeIndex = index + ValueLayout.JAVA_SHORT.byteSize();
     }
 
     public void writeShort(short s) {
@@ -103,12 +275,9 @@ public abstract sealed class WriteBuffer implements AutoCloseable permits WriteB
     }
 
     public void writeChar(char c, ByteOrder byteOrder) {
-        long nextIndex = Math.addExact(writeIndex, ValueLayout.JAVA_CHAR.byteSize());
-        if (nextIndex > segment.byteSize()) {
-            segment = resize(nextIndex);
-        }
-        MemAccess.setChar(segment, writeIndex, c, byteOrder);
-        writeIndex = nextIndex;
+        long index = prepare(ValueLayout.JAVA_CHAR.byteSize());
+        MemAccess.setChar(segment, index, c, byteOrder);
+        writeIndex = index + ValueLayout.JAVA_CHAR.byteSize();
     }
 
     public void writeChar(char c) {
@@ -116,12 +285,9 @@ public abstract sealed class WriteBuffer implements AutoCloseable permits WriteB
     }
 
     public void writeInt(int i, ByteOrder byteOrder) {
-        long nextIndex = Math.addExact(writeIndex, ValueLayout.JAVA_INT.byteSize());
-        if (nextIndex > segment.byteSize()) {
-            segment = resize(nextIndex);
-        }
-        MemAccess.setInt(segment, writeIndex, i, byteOrder);
-        writeIndex = nextIndex;
+        long index = prepare(ValueLayout.JAVA_INT.byteSize());
+        MemAccess.setInt(segment, index, i, byteOrder);
+        writeIndex = index + ValueLayout.JAVA_INT.byteSize();
     }
 
     public void writeInt(int i) {
@@ -129,12 +295,9 @@ public abstract sealed class WriteBuffer implements AutoCloseable permits WriteB
     }
 
     public void writeLong(long l, ByteOrder byteOrder) {
-        long nextIndex = Math.addExact(writeIndex, ValueLayout.JAVA_LONG.byteSize());
-        if (nextIndex > segment.byteSize()) {
-            segment = resize(nextIndex);
-        }
-        MemAccess.setLong(segment, writeIndex, l, byteOrder);
-        writeIndex = nextIndex;
+        long index = prepare(ValueLayout.JAVA_LONG.byteSize());
+        MemAccess.setLong(segment, index, l, byteOrder);
+        writeIndex = index + ValueLayout.JAVA_LONG.byteSize();
     }
 
     public void writeLong(long l) {
@@ -142,12 +305,9 @@ public abstract sealed class WriteBuffer implements AutoCloseable permits WriteB
     }
 
     public void writeFloat(float f, ByteOrder byteOrder) {
-        long nextIndex = Math.addExact(writeIndex, ValueLayout.JAVA_FLOAT.byteSize());
-        if (nextIndex > segment.byteSize()) {
-            segment = resize(nextIndex);
-        }
-        MemAccess.setFloat(segment, writeIndex, f, byteOrder);
-        writeIndex = nextIndex;
+        long index = prepare(ValueLayout.JAVA_FLOAT.byteSize());
+        MemAccess.setFloat(segment, index, f, byteOrder);
+        writeIndex = index + ValueLayout.JAVA_FLOAT.byteSize();
     }
 
     public void writeFloat(float f) {
@@ -155,46 +315,159 @@ public abstract sealed class WriteBuffer implements AutoCloseable permits WriteB
     }
 
     public void writeDouble(double d, ByteOrder byteOrder) {
-        long nextIndex = Math.addExact(writeIndex, ValueLayout.JAVA_DOUBLE.byteSize());
-        if (nextIndex > segment.byteSize()) {
-            segment = resize(nextIndex);
-        }
-        MemAccess.setDouble(segment, writeIndex, d, byteOrder);
-        writeIndex = nextIndex;
+        long index = prepare(ValueLayout.JAVA_DOUBLE.byteSize());
+        MemAccess.setDouble(segment, index, d, byteOrder);
+        writeIndex = index + ValueLayout.JAVA_DOUBLE.byteSize();
     }
 
     public void writeDouble(double d) {
         writeDouble(d, ByteOrder.nativeOrder());
     }
 
-    public void writeUtf8Str(String str) {
-        MemorySegment m = MemorySegment.ofArray(str.getBytes(StandardCharsets.UTF_8));
-        long nextIndex = Math.addExact(Math.addExact(writeIndex, m.byteSize()), 1);
-        if(nextIndex > segment.byteSize()) {
-            segment = resize(nextIndex);
+    public void writeShorts(short[] src, int off, int len, ByteOrder byteOrder) {
+        writeArray(src, MemAccess.shortLayout(byteOrder), off, len);
+    }
+
+    public void writeShorts(short[] src, int off, int len) {
+        writeShorts(src, off, len, ByteOrder.nativeOrder());
+    }
+
+    public void writeInts(int[] src, int off, int len, ByteOrder byteOrder) {
+        writeArray(src, MemAccess.intLayout(byteOrder), off, len);
+    }
+
+    public void writeInts(int[] src, int off, int len) {
+        writeInts(src, off, len, ByteOrder.nativeOrder());
+    }
+
+    public void writeLongs(long[] src, int off, int len, ByteOrder byteOrder) {
+        writeArray(src, MemAccess.longLayout(byteOrder), off, len);
+    }
+
+    public void writeLongs(long[] src, int off, int len) {
+        writeLongs(src, off, len, ByteOrder.nativeOrder());
+    }
+
+    public void writeFloats(float[] src, int off, int len, ByteOrder byteOrder) {
+        writeArray(src, MemAccess.floatLayout(byteOrder), off, len);
+    }
+
+    public void writeFloats(float[] src, int off, int len) {
+        writeFloats(src, off, len, ByteOrder.nativeOrder());
+    }
+
+    public void writeDoubles(double[] src, int off, int len, ByteOrder byteOrder) {
+        writeArray(src, MemAccess.doubleLayout(byteOrder), off, len);
+    }
+
+    public void writeDoubles(double[] src, int off, int len) {
+        writeDoubles(src, off, len, ByteOrder.nativeOrder());
+    }
+
+    /// Copy len elements of the primitive array starting from off, swapping bytes if the layout order is not native
+    void writeArray(Object src, ValueLayout layout, int off, int len) {
+        long index = prepare(Math.multiplyExact(layout.byteSize(), (long) len));
+        MemorySegment.copy(src, off, segment, layout, index, len);
+        writeIndex = index + layout.byteSize() * len;
+    }
+
+    /// Number of bytes the unsigned varint of value would take
+    public static int varLength(long value) {
+        return (Long.SIZE - Long.numberOfLeadingZeros(value | 1L) + 6) / 7;
+    }
+
+    /// Write the int as an unsigned varint, taking at most 5 bytes
+    public void writeVarInt(int value) {
+        writeVarLong(Integer.toUnsignedLong(value));
+    }
+
+    /// Write the long as an unsigned varint, taking at most 10 bytes
+    public void writeVarLong(long value) {
+        int n = varLength(value);
+        long index = prepare(n);
+        if(n <= Long.BYTES && segment.byteSize() - index >= Long.BYTES) {
+            // spread 7-bit groups into bytes and set the continuation bit on all but the last one, bytes after the varint
+            // are garbage within the capacity and would be overwritten later
+            long data = Long.expand(value, 0x7F7F7F7F7F7F7F7FL) | (0x0080808080808080L >>> ((Long.BYTES - n) << 3));
+            MemAccess.setLong(segment, index, data, ByteOrder.LITTLE_ENDIAN);
+        } else {
+            long v = value;
+            for(int i = 0; i < n - 1; i++) {
+                MemAccess.setByte(segment, index + i, (byte) (v | 0x80L));
+                v >>>= 7;
+            }
+            MemAccess.setByte(segment, index + n - 1, (byte) v);
         }
-        MemorySegment.copy(m, 0L, segment, writeIndex, m.byteSize());
-        MemAccess.setByte(segment, Math.addExact(writeIndex, m.byteSize()), (byte) '\0');
-        writeIndex = nextIndex;
+        writeIndex = index + n;
+    }
+
+    public void writeZigZag(int value) {
+        writeVarInt((value << 1) ^ (value >> 31));
     }
 
+    public void writeZigZag(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    /// Write the payload prefixed with its length as an unsigned varint
+    public void writeLengthPrefixed(MemorySegment payload) {
+        writeVarLong(payload.byteSize());
+        writeSegment(payload);
+    }
+
+    public void writeLengthPrefixed(byte[] payload) {
+        writeVarLong(payload.length);
+        writeBytes(payload);
+    }
+
+    /// Write the string as UTF-8 bytes, followed by a '\0' terminator
+    public void writeUtf8Str(String str) {
+        long len = Utf8.encodedLength(str);
+        long index = prepare(Math.addExact(len, 1));
+        Utf8.encode(str, segment, index, batch());
+        MemAccess.setByte(segment, index + len, (byte) '\0');
+        writeIndex = index + len + 1;
+    }
+
+    /// Write the string as UTF-8 bytes without terminator
+    public void writeUtf8(String str) {
+        long len = Utf8.encodedLength(str);
+        long index = prepare(len);
+        Utf8.encode(str, segment, index, batch());
+        writeIndex = index + len;
+    }
+
+    /// Write a single code point as UTF-8 bytes, lone surrogates are written as '?'
     public void writeUtf8Data(int data) {
+        if(data < 0 || data > Character.MAX_CODE_POINT) {
+            throw new IllegalArgumentException("Invalid code point : " + data);
+        }
         if(data < 0x80) {
             writeByte((byte) data);
         }else if(data < 0x800) {
             writeBytes((byte) (0xC0 | (data >> 6)), (byte) (0x80 | (data & 0x3F)));
-        }else {
+        }else if(data >= Character.MIN_SURROGATE && data <= Character.MAX_SURROGATE) {
+            writeByte((byte) '?');
+        }else if(data < 0x10000) {
             writeBytes((byte) (0xE0 | (data >> 12)), (byte) (0x80 | ((data >> 6) & 0x3F)), (byte) (0x80 | (data & 0x3F)));
+        }else {
+            writeBytes((byte) (0xF0 | (data >> 18)), (byte) (0x80 | ((data >> 12) & 0x3F)), (byte) (0x80 | ((data >> 6) & 0x3F)), (byte) (0x80 | (data & 0x3F)));
         }
     }
 
-    public void writeSegment(MemorySegment m) {
-        long nextIndex = Math.addExact(writeIndex, m.byteSize());
-        if(nextIndex > segment.byteSize()) {
-            segment = resize(nextIndex);
+    private char[] batch() {
+        char[] r = chars;
+        if(r == null) {
+            r = new char[Utf8.BATCH_SIZE];
+            chars = r;
         }
-        MemorySegment.copy(m, 0L, segment, writeIndex, m.byteSize());
-        writeIndex = nextIndex;
+        return r;
+    }
+
+    public void writeSegment(MemorySegment m) {
+        long index = prepare(m.byteSize());
+        MemorySegment.copy(m, 0L, segment, index, m.byteSize());
+        writeIndex = index + m.byteSize();
     }
 
     public MemorySegment content() {
@@ -207,6 +480,11 @@ public abstract sealed class WriteBuffer implements AutoCloseable permits WriteB
         }
     }
 
+    /// Content of the buffer as segments in write order, which could be used for ReadBuffer or gathering writes directly
+    public List<MemorySegment> contents() {
+        return writeIndex == 0L ? List.of() : List.of(content());
+    }
+
     public static long grow(long cap) {
         long newCap = 1L << (Long.SIZE - Long.numberOfLeadingZeros(cap));
         if(newCap < 0L) {
@@ -218,15 +496,98 @@ public abstract sealed class WriteBuffer implements AutoCloseable permits WriteB
     private static final class NativeWriteBuffer extends WriteBuffer {
         private final Mem mem;
         private final long initialSize;
+        private final LeakDetector.Leak leak;
 
         NativeWriteBuffer(Mem m, long size) {
             mem = m;
             initialSize = size;
+            leak = LeakDetector.sample(this, "NativeWriteBuffer");
+        }
+
+        @Override
+        ReadBuffer transfer(boolean shared) {
+            return transfer(mem, shared);
         }
 
         @Override
         public void close() {
             mem.freeMemory(segment);
+            if(leak != null) {
+                leak.close();
+            }
+        }
+
+        @Override
+        MemorySegment resize(long nextIndex) {
+            MemorySegment newSegment;
+            if(segment.address() == 0L) {
+                newSegment = mem.allocateMemory(Math.max(initialSize, grow(nextIndex)));
+            } else {
+                newSegment = mem.reallocMemory(segment, grow(nextIndex));
+            }
+            if(newSegment.address() == 0L) {
+                throw new OutOfMemoryError();
+            }
+            return newSegment;
+        }
+    }
+
+    static final class PooledWriteBuffer extends WriteBuffer {
+        private final WriteBufferPool pool;
+        private final Mem mem;
+        private final long initialSize;
+        private boolean idle = false;
+        /// Sampled on every hand out, idle buffers are reachable from the pool and never reported
+        private LeakDetector.Leak leak;
+
+        PooledWriteBuffer(WriteBufferPool p, Mem m, long size) {
+            pool = p;
+            mem = m;
+            initialSize = size;
+            leak = LeakDetector.sample(this, "PooledWriteBuffer");
+        }
+
+        /// Mark the buffer as handed out by the pool
+        void acquired() {
+            idle = false;
+            leak = LeakDetector.sample(this, "PooledWriteBuffer");
+        }
+
+        /// Reset the buffer for the next usage, trimming the backing segment if it grows larger than retainedSize
+        void recycle(long retainedSize) {
+            writeIndex = 0L;
+            idle = true;
+            if(segment.byteSize() > retainedSize) {
+                MemorySegment newSegment = mem.reallocMemory(segment, retainedSize);
+                if(newSegment.address() == 0L) {
+                    mem.freeMemory(segment);
+                    segment = MemorySegment.NULL;
+                } else {
+                    segment = newSegment;
+                }
+            }
+        }
+
+        /// Actually release the backing segment
+        void free() {
+            mem.freeMemory(segment);
+            segment = MemorySegment.NULL;
+        }
+
+        @Override
+        ReadBuffer transfer(boolean shared) {
+            return transfer(mem, shared);
+        }
+
+        @Override
+        public void close() {
+            if(!idle) {
+                if(leak != null) {
+                    leak.close();
+                    leak = null;
+                }
+                pool.release(this);
+            }
         }
 
         @Override
@@ -247,6 +608,7 @@ public abstract sealed class WriteBuffer implements AutoCloseable permits WriteB
     private static final class ReservedWriteBuffer extends WriteBuffer {
         private final Mem mem;
         private final MemorySegment initialSegment;
+        private final LeakDetector.Leak leak;
 
         ReservedWriteBuffer(Mem m, MemorySegment reserved) {
             if(!reserved.isNative() || reserved.address() == 0L) {
@@ -255,13 +617,17 @@ public abstract sealed class WriteBuffer implements AutoCloseable permits WriteB
             mem = m;
             initialSegment = reserved;
             segment = reserved;
+            leak = LeakDetector.sample(this, "ReservedWriteBuffer");
         }
 
         @Override
         MemorySegment resize(long nextIndex) {
             MemorySegment newSegment;
-            if(segment.address() == initialSegment.address()) {
+            if(segment.address() == initialSegment.address() || segment.address() == 0L) {
                 newSegment = mem.allocateMemory(grow(nextIndex));
+                if(newSegment.address() == 0L) {
+                    throw new OutOfMemoryError();
+                }
                 if(writeIndex >= MemAccess.MEMCPY_THRESHOLD) {
                     MemAccess.memcpy(segment, 0L, newSegment, 0L, writeIndex);
                 } else {
@@ -277,10 +643,183 @@ public abstract sealed class WriteBuffer implements AutoCloseable permits WriteB
         }
 
         @Override
-        public void close() {
+        ReadBuffer transfer(boolean shared) {
             if(segment.address() != initialSegment.address()) {
+                return transfer(mem, shared);
+            }
+            // the reserved segment is owned by the caller, it could only be viewed, and would never be written again
+            ReadBuffer r = ReadBuffer.as(segment.asSlice(0L, writeIndex));
+            segment = MemorySegment.NULL;
+            writeIndex = 0L;
+            return r;
+        }
+
+        @Override
+        public void close() {
+            if(segment.address() != initialSegment.address() && segment.address() != 0L) {
                 mem.freeMemory(segment);
             }
+            if(leak != null) {
+                leak.close();
+            }
+        }
+    }
+
+    private static final class ChunkedWriteBuffer extends WriteBuffer {
+        private final Mem mem;
+        private final long chunkSize;
+        private final List<MemorySegment> sealed = new ArrayList<>();
+        /// Total bytes of the sealed chunks
+        private long sealedSize = 0L;
+        private final LeakDetector.Leak leak;
+
+        ChunkedWriteBuffer(Mem m, long size) {
+            mem = m;
+            chunkSize = size;
+            leak = LeakDetector.sample(this, "ChunkedWriteBuffer");
+        }
+
+        @Override
+        MemorySegment resize(long nextIndex) {
+            long required = Math.subtractExact(nextIndex, writeIndex);
+            if(writeIndex > 0L) {
+                sealed.add(segment.asSlice(0L, writeIndex));
+                sealedSize += writeIndex;
+            } else {
+                // current chunk is empty but still too small
+                mem.freeMemory(segment);
+            }
+            segment = MemorySegment.NULL;
+            writeIndex = 0L;
+            MemorySegment newSegment = mem.allocateMemory(Math.max(chunkSize, required));
+            if(newSegment.address() == 0L) {
+                throw new OutOfMemoryError();
+            }
+            return newSegment;
+        }
+
+        /// Fill the current chunk first, then continue with new chunks
+        private void writeSplit(MemorySegment src) {
+            long srcIndex = 0L;
+            long remaining = src.byteSize();
+            while (remaining > 0L) {
+                long available = segment.byteSize() - writeIndex;
+                if(available == 0L) {
+                    segment = expand(Math.addExact(writeIndex, Math.min(remaining, chunkSize)));
+                    available = segment.byteSize();
+                }
+                long len = Math.min(available, remaining);
+                if(len >= MemAccess.MEMCPY_THRESHOLD && src.isNative()) {
+                    MemAccess.memcpy(src, srcIndex, segment, writeIndex, len);
+                } else {
+                    MemorySegment.copy(src, srcIndex, segment, writeIndex, len);
+                }
+                writeIndex += len;
+                srcIndex += len;
+                remaining -= len;
+            }
+        }
+
+        @Override
+        public void writeBytes(byte[] bytes, int off, int len) {
+            writeSplit(MemorySegment.ofArray(bytes).asSlice(off, len));
+        }
+
+        @Override
+        public void writeBytes(byte[] bytes) {
+            writeSplit(MemorySegment.ofArray(bytes));
+        }
+
+        @Override
+        public void writeSegment(MemorySegment m) {
+            writeSplit(m);
+        }
+
+        /// Elements are never split between chunks
+        @Override
+        void writeArray(Object src, ValueLayout layout, int off, int len) {
+            final long elementSize = layout.byteSize();
+            while (len > 0) {
+                long available = segment.byteSize() - writeIndex;
+                if(available < elementSize) {
+                    segment = expand(Math.addExact(writeIndex, Math.max(elementSize, Math.min(Math.multiplyExact(elementSize, (long) len), chunkSize))));
+                    available = segment.byteSize() - writeIndex;
+                }
+                int n = (int) Math.min(available / elementSize, len);
+                MemorySegment.copy(src, off, segment, layout, writeIndex, n);
+                writeIndex += elementSize * n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public long writeIndex() {
+            return sealedSize + writeIndex;
+        }
+
+        @Override
+        MemorySegment patch(long position, int len) {
+            checkPatch(position, len);
+            long start = sealedSize;
+            if(position >= start) {
+                return segment.asSlice(position - start, len);
+            }
+            // backfilling mostly happens on recent chunks
+            for(int i = sealed.size() - 1; ; i--) {
+                MemorySegment m = sealed.get(i);
+                start -= m.byteSize();
+                if(position >= start) {
+                    long offset = position - start;
+                    return offset + len <= m.byteSize() ? m.asSlice(offset, len) : null;
+                }
+            }
+        }
+
+        @Override
+        public MemorySegment content() {
+            if(!sealed.isEmpty()) {
+                throw new IllegalStateException("Content spans multiple chunks, use contents() instead");
+            }
+            return super.content();
+        }
+
+        @Override
+        public List<MemorySegment> contents() {
+            List<MemorySegment> r = new ArrayList<>(sealed.size() + 1);
+            r.addAll(sealed);
+            if(writeIndex > 0L) {
+                r.add(segment.asSlice(0L, writeIndex));
+            }
+            return Collections.unmodifiableList(r);
+        }
+
+        @Override
+        ReadBuffer transfer(boolean shared) {
+            List<MemorySegment> chunks = new ArrayList<>(sealed);
+            if(writeIndex > 0L) {
+                chunks.add(segment.asSlice(0L, writeIndex));
+                segment = MemorySegment.NULL;
+                writeIndex = 0L;
+            }
+            sealed.clear();
+            sealedSize = 0L;
+            return ReadBuffer.owned(chunks, () -> chunks.forEach(mem::freeMemory), shared);
+        }
+
+        @Override
+        public void close() {
+            for (MemorySegment m : sealed) {
+                mem.freeMemory(m);
+            }
+            sealed.clear();
+            sealedSize = 0L;
+            mem.freeMemory(segment);
+            segment = MemorySegment.NULL;
+            writeIndex = 0L;
+            if(leak != null) {
+                leak.close();
+            }
         }
     }
 
@@ -294,7 +833,8 @@ public abstract sealed class WriteBuffer implements AutoCloseable permits WriteB
         @Override
         MemorySegment resize(long nextIndex) {
             MemorySegment newSegment;
-            if(segment.address() == 0L) {
+            // heap segments always have zero address, so check whether the array exists instead
+            if(segment.heapBase().isEmpty()) {
                 newSegment = MemorySegment.ofArray(new byte[Math.max(initialSize, Math.toIntExact(grow(nextIndex)))]);
             } else {
                 byte[] base = (byte[]) segment.heapBase().orElseThrow();
@@ -305,6 +845,15 @@ public abstract sealed class WriteBuffer implements AutoCloseable permits WriteB
             return newSegment;
         }
 
+        @Override
+        ReadBuffer transfer(boolean shared) {
+            // the array would never be written again, so it could be shared directly
+            ReadBuffer r = ReadBuffer.as(segment.asSlice(0L, writeIndex));
+            segment = MemorySegment.NULL;
+            writeIndex = 0L;
+            return r;
+        }
+
         @Override
         public void close() {
             // No external close operation needed for HeapWriteBuffer
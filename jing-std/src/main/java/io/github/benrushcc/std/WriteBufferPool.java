@@ -0,0 +1,129 @@
+package io.github.benrushcc.std;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/// Pool of native WriteBuffers whose backing segments are kept warm across usages
+///
+/// Buffers are cached in lock-free striped slots, with a linearly scanned shared array behind them, closing a pooled
+/// buffer would reset its writeIndex and hand it back to the pool, trimming its segment if it has grown larger than the
+/// retained size. Slots are claimed by CAS rather than by thread identity, so virtual threads migrating between
+/// carriers would only change which stripe they hit first
+@SuppressWarnings("unused")
+public final class WriteBufferPool implements AutoCloseable {
+
+    private static final int CACHE_SIZE = Math.max(Integer.getInteger("jing.writeBufferPool.cache.size", 4), 1);
+
+    private static final int SHARED_SIZE = Math.max(Integer.getInteger("jing.writeBufferPool.shared.size", 64), 0);
+
+    private static final long DEFAULT_RETAINED_SIZE = Long.getLong("jing.writeBufferPool.retained.size", 65536L);
+
+    private static final long DEFAULT_INITIAL_SIZE = Long.getLong("jing.writeBuffer.native.size", 4096L);
+
+    private static final int STRIPE_SHIFT = Math.max(1, 32 - Integer.numberOfLeadingZeros(Runtime.getRuntime().availableProcessors() - 1));
+
+    public static WriteBufferPool of(Mem m) {
+        return new WriteBufferPool(m, DEFAULT_INITIAL_SIZE, Math.max(DEFAULT_INITIAL_SIZE, DEFAULT_RETAINED_SIZE));
+    }
+
+    public static WriteBufferPool of(Mem m, long initialSize, long retainedSize) {
+        if(initialSize <= 0L || retainedSize < initialSize) {
+            throw new IllegalArgumentException("Retained size must be no less than initial size, and both greater than zero");
+        }
+        return new WriteBufferPool(m, initialSize, retainedSize);
+    }
+
+    private final Mem mem;
+    private final long initialSize;
+    private final long retainedSize;
+    private final AtomicReferenceArray<WriteBuffer.PooledWriteBuffer> caches = new AtomicReferenceArray<>(CACHE_SIZE << STRIPE_SHIFT);
+    private final AtomicReferenceArray<WriteBuffer.PooledWriteBuffer> shared = new AtomicReferenceArray<>(SHARED_SIZE);
+    private volatile boolean closed = false;
+
+    private WriteBufferPool(Mem m, long initial, long retained) {
+        mem = m;
+        initialSize = initial;
+        retainedSize = retained;
+    }
+
+    private static int stripeBase() {
+        long id = Thread.currentThread().threadId();
+        return ((int) ((id * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - STRIPE_SHIFT))) * CACHE_SIZE;
+    }
+
+    /// Acquire a WriteBuffer from the pool, closing it would return it back
+    public WriteBuffer acquire() {
+        if(closed) {
+            throw new IllegalStateException("WriteBufferPool already closed");
+        }
+        WriteBuffer.PooledWriteBuffer buffer = poll();
+        if(buffer == null) {
+            return WriteBuffer.pooled(this, mem, initialSize);
+        }
+        buffer.acquired();
+        return buffer;
+    }
+
+    private WriteBuffer.PooledWriteBuffer poll() {
+        int base = stripeBase();
+        for(int i = base; i < base + CACHE_SIZE; i++) {
+            WriteBuffer.PooledWriteBuffer buffer = caches.getPlain(i);
+            if(buffer != null && caches.compareAndSet(i, buffer, null)) {
+                return buffer;
+            }
+        }
+        for(int i = 0; i < SHARED_SIZE; i++) {
+            WriteBuffer.PooledWriteBuffer buffer = shared.getPlain(i);
+            if(buffer != null && shared.compareAndSet(i, buffer, null)) {
+                return buffer;
+            }
+        }
+        return null;
+    }
+
+    private boolean offer(WriteBuffer.PooledWriteBuffer buffer) {
+        int base = stripeBase();
+        for(int i = base; i < base + CACHE_SIZE; i++) {
+            if(caches.getPlain(i) == null && caches.compareAndSet(i, null, buffer)) {
+                return true;
+            }
+        }
+        for(int i = 0; i < SHARED_SIZE; i++) {
+            if(shared.getPlain(i) == null && shared.compareAndSet(i, null, buffer)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void release(WriteBuffer.PooledWriteBuffer buffer) {
+        buffer.recycle(retainedSize);
+        if(closed || !offer(buffer)) {
+            buffer.free();
+        } else if(closed) {
+            // pool closed concurrently, try to take it back
+            drain();
+        }
+    }
+
+    private void drain() {
+        for(int i = 0; i < caches.length(); i++) {
+            WriteBuffer.PooledWriteBuffer buffer = caches.getAndSet(i, null);
+            if(buffer != null) {
+                buffer.free();
+            }
+        }
+        for(int i = 0; i < shared.length(); i++) {
+            WriteBuffer.PooledWriteBuffer buffer = shared.getAndSet(i, null);
+            if(buffer != null) {
+                buffer.free();
+            }
+        }
+    }
+
+    /// Free all the cached buffers, buffers still in use would be freed when they are closed
+    @Override
+    public void close() {
+        closed = true;
+        drain();
+    }
+}
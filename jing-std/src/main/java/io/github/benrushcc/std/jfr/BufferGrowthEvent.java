@@ -0,0 +1,25 @@
+package io.github.benrushcc.std.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/// WriteBuffer growing its backing memory, useful for tuning the initial buffer sizes
+@Name("jing.BufferGrowth")
+@Label("Buffer Growth")
+@Category({"Jing", "Memory"})
+@Description("WriteBuffer growing its backing memory")
+public final class BufferGrowthEvent extends jdk.jfr.Event {
+    @Label("Buffer Type")
+    public String bufferType;
+
+    @Label("Old Capacity")
+    @DataAmount
+    public long oldCapacity;
+
+    @Label("New Capacity")
+    @DataAmount
+    public long newCapacity;
+}
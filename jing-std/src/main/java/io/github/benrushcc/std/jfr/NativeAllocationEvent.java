@@ -0,0 +1,36 @@
+package io.github.benrushcc.std.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/// Native allocate, realloc or free performed through an instrumented Mem, the event duration is the latency
+@Name("jing.NativeAllocation")
+@Label("Native Allocation")
+@Category({"Jing", "Memory"})
+@Description("Native memory operation performed through an instrumented Mem")
+@StackTrace(false)
+public final class NativeAllocationEvent extends jdk.jfr.Event {
+    public static final String ALLOCATE = "allocate";
+    public static final String REALLOC = "realloc";
+    public static final String FREE = "free";
+    /// Size of frees whose segment doesn't carry its size, such as segments created by MemorySegment.ofAddress
+    public static final long UNKNOWN_SIZE = -1L;
+
+    @Label("Allocator")
+    public String allocator;
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Size")
+    @Description("Requested size, or the byte size of the freed segment on a best-effort basis, -1 if unknown")
+    @DataAmount
+    public long size;
+
+    @Label("Address")
+    public long address;
+}
@@ -0,0 +1,25 @@
+package io.github.benrushcc.std.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/// Native allocation exceeding the oversize threshold of an instrumented Mem, recorded with its stack trace
+@Name("jing.OversizeAllocation")
+@Label("Oversize Allocation")
+@Category({"Jing", "Memory"})
+@Description("Native allocation exceeding the oversize threshold")
+public final class OversizeAllocationEvent extends jdk.jfr.Event {
+    @Label("Allocator")
+    public String allocator;
+
+    @Label("Size")
+    @DataAmount
+    public long size;
+
+    @Label("Threshold")
+    @DataAmount
+    public long threshold;
+}
@@ -0,0 +1,23 @@
+package io.github.benrushcc.std.lib;
+
+import io.github.benrushcc.lib.Lib;
+import io.github.benrushcc.lib.Link;
+
+import java.lang.foreign.MemorySegment;
+
+@Lib("jing")
+public interface MmapMemLib {
+
+    int HUGE_PAGE = 1;
+
+    int POPULATE = 2;
+
+    @Link(name = "jing_mmap_alloc", critical = true)
+    MemorySegment mmapAlloc(long size, long alignment, int flags);
+
+    @Link(name = "jing_mmap_realloc", critical = true)
+    MemorySegment mmapRealloc(MemorySegment seg, long newSize, int flags);
+
+    @Link(name = "jing_mmap_free", critical = true)
+    void mmapFree(MemorySegment seg);
+}
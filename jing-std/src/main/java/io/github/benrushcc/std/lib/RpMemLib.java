@@ -31,4 +31,31 @@ public interface RpMemLib {
 
     @Link(name = "jing_rp_aligned_alloc", critical = true)
     MemorySegment rpAlignedAlloc(long alignment, long size);
+
+    @Link(name = "jing_rp_heap_acquire", critical = true)
+    MemorySegment rpHeapAcquire();
+
+    @Link(name = "jing_rp_heap_release", critical = true)
+    void rpHeapRelease(MemorySegment heap);
+
+    @Link(name = "jing_rp_heap_malloc", critical = true)
+    MemorySegment rpHeapMalloc(MemorySegment heap, long size);
+
+    @Link(name = "jing_rp_heap_aligned_alloc", critical = true)
+    MemorySegment rpHeapAlignedAlloc(MemorySegment heap, long alignment, long size);
+
+    @Link(name = "jing_rp_heap_realloc", critical = true)
+    MemorySegment rpHeapRealloc(MemorySegment heap, MemorySegment seg, long newSize);
+
+    @Link(name = "jing_rp_heap_free", critical = true)
+    void rpHeapFree(MemorySegment heap, MemorySegment seg);
+
+    @Link(name = "jing_rp_heap_free_all", critical = true)
+    void rpHeapFreeAll(MemorySegment heap);
+
+    @Link(name = "jing_rp_usable_size", critical = true)
+    long rpUsableSize(MemorySegment seg);
+
+    @Link(name = "jing_rp_global_statistics", critical = true, allowHeapAccess = true)
+    void rpGlobalStatistics(MemorySegment stats);
 }
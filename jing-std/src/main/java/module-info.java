@@ -2,9 +2,11 @@ module jing.std {
     requires transitive jing.common;
     requires transitive jing.lib;
     requires static jing.libprocessor;
+    requires jdk.jfr;
 
     exports io.github.benrushcc.std;
     exports io.github.benrushcc.std.lib;
+    exports io.github.benrushcc.std.jfr;
 
-    provides io.github.benrushcc.lib.LibRegistry with io.github.benrushcc.std.lib._SysMemLib$$Lib, io.github.benrushcc.std.lib._RpMemLib$$Lib;
+    provides io.github.benrushcc.lib.LibRegistry with io.github.benrushcc.std.lib._SysMemLib$$Lib, io.github.benrushcc.std.lib._RpMemLib$$Lib, io.github.benrushcc.std.lib._MmapMemLib$$Lib;
 }
\ No newline at end of file
@@ -0,0 +1,28 @@
+package io.github.benrushcc.test;
+
+import io.github.benrushcc.std.Allocator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+
+public class AllocatorTest {
+    @Test
+    public void testRegionAllocator() {
+        Allocator heap = Allocator.HEAP_ALLOCATOR.orElseSet(() -> new Allocator.HeapAllocator());
+        try(Allocator.DirectRegionAllocator allocator = heap.regionAllocator(1024, true)) {
+            MemorySegment m1 = allocator.allocate(3L, 1L);
+            MemorySegment m2 = allocator.allocate(8L, 8L);
+            Assertions.assertEquals(0L, m2.address() & 7L);
+            Assertions.assertTrue(m2.address() > m1.address() && m2.address() - m1.address() < 16L);
+            MemorySegment m3 = allocator.allocate(64, 128);
+            Assertions.assertEquals(0L, m3.address() & 127L);
+            MemorySegment large = allocator.allocate(4096);
+            Assertions.assertEquals(4096L, large.byteSize());
+            large.fill((byte) 1);
+            allocator.reset();
+            MemorySegment m4 = allocator.allocate(3L, 1L);
+            Assertions.assertEquals(m1.address(), m4.address());
+        }
+    }
+}
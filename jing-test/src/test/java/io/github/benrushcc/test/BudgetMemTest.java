@@ -0,0 +1,88 @@
+package io.github.benrushcc.test;
+
+import io.github.benrushcc.std.BudgetMem;
+import io.github.benrushcc.std.SysMem;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BudgetMemTest {
+    @Test
+    public void testBudget() {
+        AtomicInteger exceeded = new AtomicInteger();
+        AtomicInteger recovered = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        BudgetMem mem = BudgetMem.of(SysMem.instance(), 512L, 1024L, new BudgetMem.Listener() {
+            @Override
+            public void softLimitExceeded(long used) {
+                exceeded.incrementAndGet();
+            }
+
+            @Override
+            public void softLimitRecovered(long used) {
+                recovered.incrementAndGet();
+            }
+
+            @Override
+            public void hardLimitReached(long requested) {
+                rejected.incrementAndGet();
+            }
+        });
+        MemorySegment first = mem.tryAllocateMemory(400L);
+        Assertions.assertNotEquals(0L, first.address());
+        Assertions.assertEquals(416L, mem.used());
+        first.set(ValueLayout.JAVA_LONG_UNALIGNED, 392L, 7L);
+        MemorySegment second = mem.tryAllocateMemory(400L);
+        Assertions.assertNotEquals(0L, second.address());
+        Assertions.assertEquals(1, exceeded.get());
+        Assertions.assertEquals(0L, mem.tryAllocateMemory(400L).address());
+        Assertions.assertEquals(1, rejected.get());
+        Assertions.assertEquals(0L, mem.tryAllocateMemory(400L, Duration.ofMillis(10L)).address());
+        mem.freeMemory(MemorySegment.ofAddress(second.address()));
+        Assertions.assertEquals(416L, mem.used());
+        MemorySegment grown = mem.reallocMemory(first, 600L);
+        Assertions.assertNotEquals(0L, grown.address());
+        Assertions.assertEquals(7L, grown.get(ValueLayout.JAVA_LONG_UNALIGNED, 392L));
+        Assertions.assertEquals(616L, mem.used());
+        Assertions.assertEquals(0L, mem.reallocMemory(grown, 2000L).address());
+        Assertions.assertEquals(0L, mem.tryReallocMemory(grown, 2000L, Duration.ofMillis(10L)).address());
+        Assertions.assertEquals(616L, mem.used());
+        Assertions.assertEquals(7L, grown.get(ValueLayout.JAVA_LONG_UNALIGNED, 392L));
+        Assertions.assertEquals(recovered.get() + 1, exceeded.get());
+        mem.freeMemory(grown);
+        MemorySegment aligned = mem.alignedAllocateMemory(64L, 100L);
+        Assertions.assertEquals(0L, aligned.address() & 63L);
+        Assertions.assertEquals(164L, mem.used());
+        mem.alignedFreeMemory(aligned);
+        Assertions.assertEquals(0L, mem.used());
+        Assertions.assertEquals(exceeded.get(), recovered.get());
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        BudgetMem mem = BudgetMem.of(SysMem.instance(), 4096L);
+        MemorySegment held = mem.allocateMemory(3000L);
+        CountDownLatch started = new CountDownLatch(1);
+        try(var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<MemorySegment> future = executor.submit(() -> {
+                started.countDown();
+                return mem.allocateMemory(3000L);
+            });
+            started.await();
+            Thread.sleep(50L);
+            Assertions.assertFalse(future.isDone());
+            mem.freeMemory(held);
+            MemorySegment m = future.get();
+            Assertions.assertNotEquals(0L, m.address());
+            mem.freeMemory(m);
+        }
+        Assertions.assertEquals(0L, mem.used());
+    }
+}
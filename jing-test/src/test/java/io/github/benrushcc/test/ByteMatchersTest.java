@@ -0,0 +1,80 @@
+package io.github.benrushcc.test;
+
+import io.github.benrushcc.std.ByteMatchers;
+import io.github.benrushcc.std.ReadBuffer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+public class ByteMatchersTest {
+    private static List<ByteMatchers.ByteSet> sets() {
+        ByteMatchers.ByteSet structural = ByteMatchers.anyOf("{}[]:,\"\\".getBytes(StandardCharsets.US_ASCII));
+        ByteMatchers.ByteSet digits = ByteMatchers.range((byte) '0', (byte) '9');
+        return List.of(
+                ByteMatchers.anyOf((byte) '\n'),
+                ByteMatchers.anyOf((byte) '\r', (byte) '\n'),
+                ByteMatchers.anyOf((byte) '\r', (byte) '\n', (byte) 0),
+                ByteMatchers.anyOf("\r\n:;,".getBytes(StandardCharsets.US_ASCII)),
+                structural,
+                digits,
+                ByteMatchers.range((byte) 0x80, (byte) 0xFF),
+                digits.not(),
+                ByteMatchers.anyOf((byte) 'a').not(),
+                digits.or(ByteMatchers.range((byte) 'a', (byte) 'f')).or(structural),
+                ByteMatchers.anyOf(),
+                ByteMatchers.anyOf().not()
+        );
+    }
+
+    @Test
+    public void testMatch() {
+        for (ByteMatchers.ByteSet set : sets()) {
+            ByteMatchers.ByteSet negated = set.not();
+            for(int v = 0; v < 256; v++) {
+                Assertions.assertNotEquals(set.match((byte) v), negated.match((byte) v));
+            }
+        }
+        Assertions.assertTrue(ByteMatchers.range((byte) '0', (byte) '9').match((byte) '5'));
+        Assertions.assertFalse(ByteMatchers.range((byte) '0', (byte) '9').match((byte) 'a'));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ByteMatchers.range((byte) 2, (byte) 1));
+    }
+
+    @Test
+    public void testSearch() {
+        Random random = new Random(17);
+        for (ByteMatchers.ByteSet set : sets()) {
+            for(int round = 0; round < 50; round++) {
+                byte[] data = new byte[2 + random.nextInt(300)];
+                for(int i = 0; i < data.length; i++) {
+                    // mostly letters so matches are sparse
+                    data[i] = random.nextInt(16) == 0 ? (byte) random.nextInt(256) : (byte) ('g' + random.nextInt(16));
+                }
+                int split = 1 + random.nextInt(data.length - 1);
+                ReadBuffer single = ReadBuffer.as(MemorySegment.ofArray(data));
+                ReadBuffer vector = ReadBuffer.as(MemorySegment.ofArray(data));
+                ReadBuffer multiple = ReadBuffer.as(List.of(MemorySegment.ofArray(data).asSlice(0, split), MemorySegment.ofArray(data).asSlice(split)));
+                int from = 0;
+                while (true) {
+                    long expected = -1L;
+                    for(int i = from; i < data.length; i++) {
+                        if(set.match(data[i])) {
+                            expected = i + 1;
+                            break;
+                        }
+                    }
+                    Assertions.assertEquals(expected, single.search(set));
+                    Assertions.assertEquals(expected, vector.vectorSearch(set));
+                    Assertions.assertEquals(expected, multiple.search(set));
+                    if(expected < 0L) {
+                        break;
+                    }
+                    from = (int) expected;
+                }
+            }
+        }
+    }
+}
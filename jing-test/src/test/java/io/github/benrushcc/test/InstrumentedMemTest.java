@@ -0,0 +1,66 @@
+package io.github.benrushcc.test;
+
+import io.github.benrushcc.std.InstrumentedMem;
+import io.github.benrushcc.std.SysMem;
+import io.github.benrushcc.std.WriteBuffer;
+import io.github.benrushcc.std.jfr.NativeAllocationEvent;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class InstrumentedMemTest {
+    @Test
+    public void testCounters() {
+        InstrumentedMem mem = InstrumentedMem.of(SysMem.instance(), "test", 1024L);
+        MemorySegment m = mem.allocateMemory(64L);
+        m = mem.reallocMemory(m, 4096L);
+        mem.freeMemory(m);
+        MemorySegment aligned = mem.alignedAllocateMemory(64L, 128L);
+        mem.alignedFreeMemory(aligned);
+        Assertions.assertEquals(2L, mem.allocations());
+        Assertions.assertEquals(1L, mem.reallocations());
+        Assertions.assertEquals(2L, mem.frees());
+        Assertions.assertEquals(1L, mem.oversizes());
+        Assertions.assertEquals(0L, mem.failures());
+        Assertions.assertEquals(64L + 4096L + 128L, mem.requestedBytes());
+    }
+
+    @Test
+    public void testEvents() throws Exception {
+        Path file = Files.createTempFile("jing", ".jfr");
+        try(Recording recording = new Recording()) {
+            recording.enable("jing.NativeAllocation");
+            recording.enable("jing.BufferGrowth");
+            recording.enable("jing.OversizeAllocation");
+            recording.start();
+            InstrumentedMem mem = InstrumentedMem.of(SysMem.instance(), "events", 1024L);
+            try(WriteBuffer writeBuffer = WriteBuffer.nativeBuffer(mem, 16L)) {
+                for(int i = 0; i < 512; i++) {
+                    writeBuffer.writeLong(i);
+                }
+            }
+            MemorySegment sized = mem.allocateMemory(32L);
+            mem.freeMemory(sized);
+            MemorySegment unsized = mem.allocateMemory(32L);
+            mem.freeMemory(MemorySegment.ofAddress(unsized.address()));
+            recording.stop();
+            recording.dump(file);
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            Assertions.assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("jing.NativeAllocation") && e.getString("allocator").equals("events") && e.getString("operation").equals("realloc")));
+            Assertions.assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("jing.NativeAllocation") && e.getString("operation").equals("free") && e.getLong("address") == sized.address() && e.getLong("size") == 32L));
+            Assertions.assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("jing.NativeAllocation") && e.getString("operation").equals("free") && e.getLong("address") == unsized.address() && e.getLong("size") == NativeAllocationEvent.UNKNOWN_SIZE));
+            Assertions.assertTrue(events.stream().noneMatch(e -> e.getEventType().getName().equals("jing.NativeAllocation") && e.getString("operation").equals("free") && e.getLong("size") == 0L));
+            Assertions.assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("jing.BufferGrowth") && e.getLong("newCapacity") == 4096L));
+            Assertions.assertTrue(events.stream().anyMatch(e -> e.getEventType().getName().equals("jing.OversizeAllocation") && e.getLong("size") == 2048L));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package io.github.benrushcc.test;
+
+import io.github.benrushcc.std.Allocator;
+import io.github.benrushcc.std.LeakDetector;
+import io.github.benrushcc.std.SysMem;
+import io.github.benrushcc.std.WriteBuffer;
+import io.github.benrushcc.std.WriteBufferPool;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+public class LeakDetectorTest {
+
+    private static void leakWriteBuffer() {
+        WriteBuffer writeBuffer = WriteBuffer.nativeBuffer(SysMem.instance(), 64L);
+        writeBuffer.writeLong(1L);
+    }
+
+    private static void leakAllocator() {
+        Allocator heap = Allocator.HEAP_ALLOCATOR.orElseSet(() -> new Allocator.HeapAllocator());
+        Allocator.DirectRegionAllocator allocator = heap.regionAllocator(1024, false);
+        allocator.allocate(8L, 8L);
+    }
+
+    private static void leakPooledWriteBuffer(WriteBufferPool pool) {
+        WriteBuffer writeBuffer = pool.acquire();
+        writeBuffer.writeLong(1L);
+    }
+
+    private static void closeProperly(WriteBufferPool pool, long tracked) {
+        try(WriteBuffer writeBuffer = WriteBuffer.nativeBuffer(SysMem.instance(), 64L)) {
+            writeBuffer.writeLong(1L);
+            Assertions.assertEquals(LeakDetector.enabled() ? tracked + 1L : tracked, LeakDetector.tracked());
+        }
+        try(WriteBuffer writeBuffer = pool.acquire()) {
+            writeBuffer.writeLong(1L);
+        }
+    }
+
+    private static boolean reported(List<LogRecord> records, String type, String method) {
+        return records.stream().anyMatch(r -> r.getMessage().startsWith(type + " leaked") && r.getThrown() != null
+                && Arrays.stream(r.getThrown().getStackTrace()).anyMatch(f -> f.getMethodName().equals(method)));
+    }
+
+    private static void leakResource() {
+        LeakDetector.track(new Object(), "Resource");
+    }
+
+    private static List<LogRecord> capture(Logger logger) {
+        List<LogRecord> records = new CopyOnWriteArrayList<>();
+        logger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {
+
+            }
+
+            @Override
+            public void close() {
+
+            }
+        });
+        return records;
+    }
+
+    private static void awaitLeaked(long expected) throws InterruptedException {
+        for(int i = 0; i < 100 && LeakDetector.leaked() < expected; i++) {
+            System.gc();
+            Thread.sleep(10L);
+        }
+    }
+
+    @Test
+    public void testTrack() throws Exception {
+        Logger logger = Logger.getLogger(LeakDetector.class.getName());
+        List<LogRecord> records = capture(logger);
+        try {
+            long leaked = LeakDetector.leaked();
+            long tracked = LeakDetector.tracked();
+            Object resource = new Object();
+            LeakDetector.Leak leak = LeakDetector.track(resource, "Resource");
+            Assertions.assertEquals(tracked + 1L, LeakDetector.tracked());
+            leak.close();
+            Assertions.assertEquals(tracked, LeakDetector.tracked());
+            leakResource();
+            awaitLeaked(leaked + 1L);
+            Assertions.assertEquals(leaked + 1L, LeakDetector.leaked());
+            Assertions.assertEquals(tracked, LeakDetector.tracked());
+            Assertions.assertTrue(reported(records, "Resource", "leakResource"));
+            Assertions.assertNotNull(resource);
+        } finally {
+            for (Handler handler : logger.getHandlers()) {
+                logger.removeHandler(handler);
+            }
+        }
+    }
+
+    /// Native resources are only tracked when sampled, run with `-Djing.leak.sampling=1` to check their reports,
+    /// otherwise the disabled path is checked to track nothing
+    @Test
+    public void testSampling() throws Exception {
+        Logger logger = Logger.getLogger(LeakDetector.class.getName());
+        List<LogRecord> records = capture(logger);
+        try(WriteBufferPool pool = WriteBufferPool.of(SysMem.instance())) {
+            long leaked = LeakDetector.leaked();
+            long tracked = LeakDetector.tracked();
+            closeProperly(pool, tracked);
+            Assertions.assertEquals(tracked, LeakDetector.tracked());
+            if(!LeakDetector.enabled()) {
+                leakWriteBuffer();
+                Assertions.assertEquals(tracked, LeakDetector.tracked());
+                return ;
+            }
+            leakWriteBuffer();
+            leakAllocator();
+            leakPooledWriteBuffer(pool);
+            awaitLeaked(leaked + 3L);
+            Assertions.assertEquals(leaked + 3L, LeakDetector.leaked());
+            Assertions.assertEquals(tracked, LeakDetector.tracked());
+            Assertions.assertTrue(reported(records, "NativeWriteBuffer", "leakWriteBuffer"));
+            Assertions.assertTrue(reported(records, "DirectRegionAllocator", "leakAllocator"));
+            Assertions.assertTrue(reported(records, "PooledWriteBuffer", "leakPooledWriteBuffer"));
+        } finally {
+            for (Handler handler : logger.getHandlers()) {
+                logger.removeHandler(handler);
+            }
+        }
+    }
+}
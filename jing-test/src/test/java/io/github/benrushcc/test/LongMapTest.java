@@ -0,0 +1,92 @@
+package io.github.benrushcc.test;
+
+import io.github.benrushcc.std.LongLongMap;
+import io.github.benrushcc.std.LongObjMap;
+import io.github.benrushcc.std.SysMem;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class LongMapTest {
+    @Test
+    public void testLongLongMap() {
+        Random random = new Random(42L);
+        Map<Long, Long> expected = new HashMap<>();
+        try(LongLongMap map = LongLongMap.of(SysMem.instance())) {
+            for(int i = 0; i < 200_000; i++) {
+                // a narrow key range makes removals and updates hit entries waiting in the old table
+                long key = random.nextInt(50_000) - 100L;
+                if(random.nextInt(4) == 0) {
+                    Assertions.assertEquals(expected.remove(key) != null, map.remove(key));
+                } else {
+                    Assertions.assertEquals(expected.put(key, (long) i) == null, map.put(key, i));
+                }
+                if((i & 1023) == 0) {
+                    Assertions.assertEquals(expected.size(), map.size());
+                }
+            }
+            Assertions.assertEquals(expected.size(), map.size());
+            for(long key = -100L; key < 50_000L; key++) {
+                Long v = expected.get(key);
+                Assertions.assertEquals(v != null, map.containsKey(key));
+                Assertions.assertEquals(v == null ? -1L : v, map.get(key, -1L));
+            }
+            long[] count = new long[1];
+            map.forEach((key, value) -> {
+                Assertions.assertEquals(expected.get(key).longValue(), value);
+                count[0]++;
+            });
+            Assertions.assertEquals(expected.size(), count[0]);
+            map.clear();
+            Assertions.assertTrue(map.isEmpty());
+            Assertions.assertEquals(-1L, map.get(1L, -1L));
+        }
+    }
+
+    @Test
+    public void testMigrationProbes() {
+        try(LongLongMap map = LongLongMap.of(SysMem.instance())) {
+            long key = 1L;
+            while (map.capacity() < (1L << 21)) {
+                map.put(key++, key);
+            }
+            // the table has just grown, almost all of the old table is still waiting to be migrated
+            long start = System.nanoTime();
+            for(int i = 0; i < 100_000; i++) {
+                Assertions.assertEquals(-1L, map.get(-1L - i, -1L));
+                Assertions.assertTrue(map.put(key++, key));
+            }
+            long elapsed = System.nanoTime() - start;
+            // probing the migrated part of the old table would cost hundreds of millions of probes here
+            Assertions.assertTrue(elapsed < 2_000_000_000L, "Lookups during migration took " + elapsed + " ns");
+            for(long k = 1L; k < key; k++) {
+                Assertions.assertEquals(k + 1L, map.get(k, -1L));
+            }
+            Assertions.assertEquals(key - 1L, map.size());
+        }
+    }
+
+    @Test
+    public void testLongObjMap() {
+        try(LongObjMap<String> map = LongObjMap.of(SysMem.instance(), 1024L)) {
+            for(long i = 0L; i < 10_000L; i++) {
+                Assertions.assertNull(map.put(i, "v" + i));
+            }
+            Assertions.assertEquals("v0", map.put(0L, "zero"));
+            for(long i = 1L; i < 10_000L; i += 2) {
+                Assertions.assertEquals("v" + i, map.remove(i));
+            }
+            Assertions.assertNull(map.remove(1L));
+            Assertions.assertEquals(5_000L, map.size());
+            Assertions.assertEquals("zero", map.get(0L));
+            Assertions.assertEquals("v9998", map.get(9_998L));
+            Assertions.assertNull(map.get(9_999L));
+            Assertions.assertNull(map.put(9_999L, "again"));
+            Assertions.assertEquals("again", map.get(9_999L));
+            Assertions.assertThrows(NullPointerException.class, () -> map.put(1L, null));
+        }
+    }
+}
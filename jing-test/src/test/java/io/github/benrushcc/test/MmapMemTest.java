@@ -0,0 +1,99 @@
+package io.github.benrushcc.test;
+
+import io.github.benrushcc.std.Mem;
+import io.github.benrushcc.std.MmapMem;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.List;
+
+public class MmapMemTest {
+    private static void fill(MemorySegment m, long len) {
+        for(long i = 0L; i < len; i += 4096L) {
+            m.set(ValueLayout.JAVA_LONG_UNALIGNED, i, i);
+        }
+    }
+
+    private static void verify(MemorySegment m, long len) {
+        for(long i = 0L; i < len; i += 4096L) {
+            Assertions.assertEquals(i, m.get(ValueLayout.JAVA_LONG_UNALIGNED, i));
+        }
+    }
+
+    @Test
+    public void testAllocate() {
+        for (Mem mem : List.of(MmapMem.instance(), MmapMem.of(true, true), MmapMem.of(true, false), MmapMem.of(false, false))) {
+            MemorySegment m = mem.allocateMemory(100L);
+            Assertions.assertNotEquals(0L, m.address());
+            Assertions.assertEquals(0L, m.address() & (mem.alignmentBoundary() - 1L));
+            Assertions.assertEquals(100L, m.byteSize());
+            m.fill((byte) 1);
+            mem.freeMemory(m);
+            MemorySegment large = mem.allocateMemory(4L << 20);
+            Assertions.assertEquals(4L << 20, large.byteSize());
+            fill(large, large.byteSize());
+            verify(large, large.byteSize());
+            mem.freeMemory(MemorySegment.ofAddress(large.address()));
+        }
+    }
+
+    @Test
+    public void testRealloc() {
+        for (Mem mem : List.of(MmapMem.of(true, false), MmapMem.of(false, true))) {
+            MemorySegment m = mem.reallocMemory(MemorySegment.NULL, 1L << 20);
+            Assertions.assertNotEquals(0L, m.address());
+            fill(m, m.byteSize());
+            MemorySegment grown = mem.reallocMemory(m, 16L << 20);
+            Assertions.assertNotEquals(0L, grown.address());
+            Assertions.assertEquals(16L << 20, grown.byteSize());
+            verify(grown, 1L << 20);
+            fill(grown, grown.byteSize());
+            MemorySegment shrunk = mem.reallocMemory(grown, 2L << 20);
+            Assertions.assertNotEquals(0L, shrunk.address());
+            Assertions.assertEquals(2L << 20, shrunk.byteSize());
+            verify(shrunk, shrunk.byteSize());
+            mem.freeMemory(shrunk);
+        }
+    }
+
+    @Test
+    public void testHugePage() {
+        if(!System.getProperty("os.name").toLowerCase().contains("linux")) {
+            return ;
+        }
+        Mem mem = MmapMem.of(true, false);
+        MemorySegment m = mem.allocateMemory((2L << 20) + 100L);
+        Assertions.assertEquals(0L, m.address() & ((2L << 20) - 1L));
+        fill(m, m.byteSize());
+        MemorySegment grown = mem.reallocMemory(m, 64L << 20);
+        Assertions.assertEquals(0L, grown.address() & ((2L << 20) - 1L));
+        verify(grown, (2L << 20) + 100L);
+        MemorySegment shrunk = mem.reallocMemory(grown, 3L << 20);
+        Assertions.assertEquals(grown.address(), shrunk.address());
+        verify(shrunk, 2L << 20);
+        mem.freeMemory(shrunk);
+    }
+
+    @Test
+    public void testAligned() {
+        for (Mem mem : List.of(MmapMem.of(true, true), MmapMem.of(false, false))) {
+            for(long alignment = 8L; alignment <= 4096L; alignment <<= 1) {
+                MemorySegment m = mem.alignedAllocateMemory(alignment, 3000L);
+                Assertions.assertNotEquals(0L, m.address());
+                Assertions.assertEquals(0L, m.address() & (alignment - 1L));
+                Assertions.assertEquals(3000L, m.byteSize());
+                m.fill((byte) 7);
+                mem.alignedFreeMemory(m);
+            }
+            MemorySegment m = mem.alignedAllocateMemory(4096L, 8L << 20);
+            Assertions.assertEquals(0L, m.address() & 4095L);
+            fill(m, m.byteSize());
+            MemorySegment grown = mem.reallocMemory(m, 12L << 20);
+            Assertions.assertEquals(0L, grown.address() & 4095L);
+            verify(grown, 8L << 20);
+            mem.alignedFreeMemory(grown);
+        }
+    }
+}
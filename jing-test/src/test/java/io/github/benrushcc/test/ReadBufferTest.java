@@ -4,9 +4,14 @@ import io.github.benrushcc.std.ReadBuffer;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
 import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 public class ReadBufferTest {
     @Test
@@ -25,4 +30,188 @@ public class ReadBufferTest {
         Assertions.assertEquals(0x01010101, i);
     }
 
+    @Test
+    public void testNeedleSearch() {
+        byte[] data = new byte[300];
+        for(int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 7);
+        }
+        byte[] needle = "hello".getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(needle, 0, data, 200, needle.length);
+        ReadBuffer single = ReadBuffer.as(MemorySegment.ofArray(data));
+        Assertions.assertEquals(205L, single.search(needle));
+        Assertions.assertEquals(205L, single.readIndex());
+        Assertions.assertEquals(-1L, single.search(needle));
+        for(int split = 1; split < data.length; split += 13) {
+            ReadBuffer multiple = ReadBuffer.as(List.of(MemorySegment.ofArray(data).asSlice(0, split), MemorySegment.ofArray(data).asSlice(split)));
+            Assertions.assertEquals(205L, multiple.search(needle));
+            Assertions.assertEquals(205L, multiple.readIndex());
+            Assertions.assertEquals(-1L, multiple.search(needle));
+        }
+        List<MemorySegment> pieces = new ArrayList<>();
+        for(int i = 0; i < data.length; i++) {
+            pieces.add(MemorySegment.ofArray(data).asSlice(i, 1));
+        }
+        ReadBuffer fragmented = ReadBuffer.as(pieces);
+        Assertions.assertEquals(205L, fragmented.search(MemorySegment.ofArray(needle)));
+        Assertions.assertEquals(-1L, fragmented.search(needle));
+    }
+
+    @Test
+    public void testStreaming() {
+        ReadBuffer.StreamingReadBuffer rb = ReadBuffer.streaming();
+        Assertions.assertEquals(0L, rb.size());
+        Assertions.assertEquals(-1L, rb.search((byte) '\n'));
+        Assertions.assertNull(rb.readUtf8Until((byte) '\n'));
+        rb.append(MemorySegment.ofArray("GET / HT".getBytes(StandardCharsets.US_ASCII)));
+        Assertions.assertNull(rb.readUtf8Until((byte) '\n'));
+        Assertions.assertEquals(-1L, rb.search("\r\n".getBytes(StandardCharsets.US_ASCII)));
+        rb.append(MemorySegment.ofArray(new byte[0]));
+        rb.append(MemorySegment.ofArray("TP/1.1\r".getBytes(StandardCharsets.US_ASCII)));
+        Assertions.assertEquals(-1L, rb.search("\r\n".getBytes(StandardCharsets.US_ASCII)));
+        Assertions.assertEquals(0L, rb.readIndex());
+        rb.append(MemorySegment.ofArray("\nHost: a\r\n".getBytes(StandardCharsets.US_ASCII)));
+        Assertions.assertEquals("GET / HTTP/1.1\r", rb.readUtf8Until((byte) '\n'));
+        Assertions.assertEquals(2, rb.release().size());
+        Assertions.assertEquals(1L, rb.readIndex());
+        Assertions.assertEquals(10L, rb.size());
+        Assertions.assertEquals(10L, rb.search("\r\n".getBytes(StandardCharsets.US_ASCII)));
+        Assertions.assertEquals(1, rb.release().size());
+        Assertions.assertEquals(0L, rb.size());
+        Assertions.assertEquals(0, rb.release().size());
+        rb.append(MemorySegment.ofArray(new byte[]{1, 2, 3, 4}));
+        Assertions.assertEquals(0x04030201, rb.readInt(ByteOrder.LITTLE_ENDIAN));
+        rb.append(MemorySegment.ofArray("abcdef".getBytes(StandardCharsets.US_ASCII)));
+        byte[] reused = "xy".getBytes(StandardCharsets.US_ASCII);
+        MemorySegment needle = MemorySegment.ofArray(reused);
+        Assertions.assertEquals(-1L, rb.search(needle));
+        reused[0] = 'c';
+        reused[1] = 'd';
+        Assertions.assertEquals(8L, rb.search(needle));
+        Assertions.assertEquals(-1L, rb.search((byte) 'z'));
+        Assertions.assertEquals(-1L, rb.search("xy".getBytes(StandardCharsets.US_ASCII)));
+        rb.append(MemorySegment.ofArray("xyz".getBytes(StandardCharsets.US_ASCII)));
+        Assertions.assertEquals(12L, rb.search("xy".getBytes(StandardCharsets.US_ASCII)));
+        Assertions.assertEquals(13L, rb.search((byte) 'z'));
+        Assertions.assertEquals(-1L, rb.search((byte) 'c'));
+        Assertions.assertEquals(-1L, rb.search("cd".getBytes(StandardCharsets.US_ASCII)));
+        rb.setIndex(4L);
+        Assertions.assertEquals(7L, rb.search((byte) 'c'));
+        rb.setIndex(4L);
+        Assertions.assertEquals(8L, rb.search("cd".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    public void testSlice() {
+        byte[] data = new byte[32];
+        for(int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        ReadBuffer rb = ReadBuffer.as(List.of(MemorySegment.ofArray(data).asSlice(0, 10), MemorySegment.ofArray(data).asSlice(10, 10), MemorySegment.ofArray(data).asSlice(20)));
+        MemorySegment m = rb.readSegment(4);
+        Assertions.assertNotNull(m);
+        Assertions.assertTrue(m.isReadOnly());
+        Assertions.assertEquals((byte) 3, m.get(ValueLayout.JAVA_BYTE, 3L));
+        Assertions.assertNull(rb.readSegment(8));
+        Assertions.assertEquals(4L, rb.readIndex());
+        ReadBuffer child = rb.readSlice(8);
+        Assertions.assertEquals(12L, rb.readIndex());
+        Assertions.assertEquals(8L, child.size());
+        Assertions.assertArrayEquals(new byte[]{4, 5, 6, 7, 8, 9, 10, 11}, child.copy(0L, 8L));
+        child.readInt();
+        Assertions.assertEquals(0x0B0A0908, child.readInt(ByteOrder.LITTLE_ENDIAN));
+        ReadBuffer empty = rb.readSlice(0);
+        Assertions.assertEquals(0L, empty.size());
+        Assertions.assertEquals(-1L, empty.search((byte) 0));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, empty::readByte);
+        Assertions.assertEquals(0L, child.readSlice(0).size());
+        Assertions.assertEquals(0x13121110_0F0E0D0CL, rb.readLong(ByteOrder.LITTLE_ENDIAN));
+        Assertions.assertEquals(0x17161514, rb.readInt(ByteOrder.LITTLE_ENDIAN));
+        ReadBuffer tail = rb.readSlice(8);
+        Assertions.assertEquals(24L, tail.readLong(ByteOrder.BIG_ENDIAN) >>> 56);
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> rb.readSlice(1));
+    }
+
+    @Test
+    public void testRandomAccess() {
+        byte[] data = new byte[1000];
+        for(int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        MemorySegment whole = MemorySegment.ofArray(data);
+        List<MemorySegment> chunks = new ArrayList<>();
+        for(int i = 0; i < data.length; ) {
+            int len = Math.min(1 + (i % 7), data.length - i);
+            chunks.add(whole.asSlice(i, len));
+            i += len;
+        }
+        ReadBuffer multiple = ReadBuffer.as(chunks);
+        ReadBuffer single = ReadBuffer.as(whole);
+        Random random = new Random(3);
+        for(int round = 0; round < 2000; round++) {
+            int index = random.nextInt(data.length - Long.BYTES);
+            ByteOrder order = random.nextBoolean() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+            Assertions.assertEquals(single.getByte(index), multiple.getByte(index));
+            Assertions.assertEquals(single.getShort(index, order), multiple.getShort(index, order));
+            Assertions.assertEquals(single.getInt(index, order), multiple.getInt(index, order));
+            Assertions.assertEquals(single.getLong(index, order), multiple.getLong(index, order));
+            single.setIndex(index);
+            multiple.setIndex(index);
+            Assertions.assertEquals(index, multiple.readIndex());
+            Assertions.assertEquals(single.readLong(order), multiple.readLong(order));
+            Assertions.assertEquals(single.readByte(), multiple.readByte());
+        }
+        Assertions.assertEquals(0L, multiple.readIndex() - single.readIndex());
+        multiple.setIndex(data.length);
+        Assertions.assertEquals(0L, multiple.available());
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> multiple.setIndex(data.length + 1));
+        Assertions.assertThrows(IndexOutOfBoundsException.class, () -> multiple.getInt(data.length - 2));
+    }
+
+    @Test
+    public void testByteSearch() {
+        try(Arena arena = Arena.ofConfined()) {
+            MemorySegment segment = arena.allocate(10000L, 8L);
+            int[] positions = {0, 7, 8, 63, 64, 65, 1000, 2047, 5000, 9999};
+            for (int position : positions) {
+                for (MemorySegment m : List.of(segment, MemorySegment.ofArray(new byte[10000]))) {
+                    m.fill((byte) 0);
+                    m.set(ValueLayout.JAVA_BYTE, position, (byte) '\n');
+                    ReadBuffer rb = ReadBuffer.as(m);
+                    Assertions.assertEquals(position + 1L, rb.search((byte) '\n'));
+                    Assertions.assertEquals(-1L, rb.search((byte) '\n'));
+                    ReadBuffer multiple = ReadBuffer.as(List.of(m.asSlice(0, 3), m.asSlice(3)));
+                    Assertions.assertEquals(position + 1L, multiple.search((byte) '\n'));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBulk() {
+        long[] longs = new long[50];
+        for(int i = 0; i < longs.length; i++) {
+            longs[i] = 0x0102030405060708L * i;
+        }
+        MemorySegment whole = MemorySegment.ofArray(new byte[longs.length * Long.BYTES]);
+        MemorySegment.copy(longs, 0, whole, ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN), 0L, longs.length);
+        List<MemorySegment> pieces = new ArrayList<>();
+        for(long i = 0; i < whole.byteSize(); i += 5) {
+            pieces.add(whole.asSlice(i, Math.min(5, whole.byteSize() - i)));
+        }
+        for (ReadBuffer rb : List.of(ReadBuffer.as(whole), ReadBuffer.as(pieces))) {
+            long[] r = new long[longs.length + 2];
+            rb.readLongs(r, 1, longs.length, ByteOrder.BIG_ENDIAN);
+            Assertions.assertEquals(0L, r[0]);
+            Assertions.assertEquals(0L, r[r.length - 1]);
+            for(int i = 0; i < longs.length; i++) {
+                Assertions.assertEquals(longs[i], r[i + 1]);
+            }
+            rb.setIndex(8L);
+            short[] shorts = new short[4];
+            rb.readShorts(shorts, 0, 4, ByteOrder.LITTLE_ENDIAN);
+            Assertions.assertEquals((short) 0x0201, shorts[0]);
+            Assertions.assertThrows(IndexOutOfBoundsException.class, () -> rb.readLongs(new long[100], 0, 100));
+        }
+    }
 }
@@ -0,0 +1,130 @@
+package io.github.benrushcc.test;
+
+import io.github.benrushcc.std.RingBuffer;
+import io.github.benrushcc.std.SysMem;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.ArrayList;
+import java.util.List;
+
+public class RingBufferTest {
+    @Test
+    public void testSpsc() {
+        try(Arena arena = Arena.ofConfined()) {
+            RingBuffer ring = RingBuffer.spsc(arena.allocate(RingBuffer.requiredSize(1024), 64L));
+            List<Integer> received = new ArrayList<>();
+            RingBuffer.MessageHandler handler = (type, buffer, offset, length) -> {
+                Assertions.assertEquals(7, type);
+                Assertions.assertEquals(12, length);
+                received.add(buffer.get(ValueLayout.JAVA_INT_UNALIGNED, offset));
+            };
+            int sent = 0;
+            // messages of 24 bytes never line up with 1024, so the producer has to pad at every wrap
+            for(int round = 0; round < 100; round++) {
+                while (ring.offer(7, MemorySegment.ofArray(new int[]{sent, 0, 0}))) {
+                    sent++;
+                }
+                Assertions.assertEquals(3, ring.read(handler, 3));
+                ring.read(handler, Integer.MAX_VALUE);
+                Assertions.assertTrue(ring.isEmpty());
+            }
+            Assertions.assertEquals(sent, received.size());
+            for(int i = 0; i < sent; i++) {
+                Assertions.assertEquals(i, received.get(i).intValue());
+            }
+            Assertions.assertThrows(IllegalArgumentException.class, () -> ring.tryClaim(1, 1024));
+        }
+    }
+
+    @Test
+    public void testMalloc() {
+        MemorySegment m = SysMem.instance().allocateMemory(RingBuffer.requiredSize(1024));
+        try {
+            // malloc'ed memory is not zeroed, so it's filled with garbage to make sure the ring doesn't rely on it
+            m.fill((byte) 0x5A);
+            RingBuffer ring = RingBuffer.mpsc(m);
+            Assertions.assertTrue(ring.isEmpty());
+            Assertions.assertEquals(0, ring.read((type, buffer, o, length) -> Assertions.fail(), 10));
+            Assertions.assertTrue(ring.offer(1, MemorySegment.ofArray(new long[]{42L})));
+            RingBuffer attached = RingBuffer.mpsc(m, false);
+            Assertions.assertEquals(RingBuffer.recordSize(8), attached.size());
+            long[] received = new long[1];
+            Assertions.assertEquals(1, attached.read((type, buffer, o, length) -> received[0] = buffer.get(ValueLayout.JAVA_LONG_UNALIGNED, o), 10));
+            Assertions.assertEquals(42L, received[0]);
+            Assertions.assertTrue(ring.isEmpty());
+        } finally {
+            SysMem.instance().freeMemory(m);
+        }
+    }
+
+    @Test
+    public void testHeap() {
+        int size = Math.toIntExact(RingBuffer.requiredSize(256));
+        RingBuffer ring = RingBuffer.spsc(MemorySegment.ofArray(new long[size / Long.BYTES]));
+        Assertions.assertTrue(ring.offer(5, MemorySegment.ofArray(new byte[]{1, 2, 3})));
+        Assertions.assertEquals(1, ring.read((type, buffer, o, length) -> Assertions.assertEquals(3, length), 10));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> RingBuffer.spsc(MemorySegment.ofArray(new byte[size])));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> RingBuffer.spsc(MemorySegment.ofArray(new long[size / Long.BYTES + 1]).asSlice(4L, size)));
+    }
+
+    @Test
+    public void testBatch() {
+        try(Arena arena = Arena.ofConfined()) {
+            RingBuffer ring = RingBuffer.mpsc(arena.allocate(RingBuffer.requiredSize(4096), 64L));
+            long offset = ring.tryClaim(2, 8, 4);
+            for(int i = 0; i < 4; i++) {
+                ring.buffer().set(ValueLayout.JAVA_LONG_UNALIGNED, offset + (long) i * RingBuffer.recordSize(8), i);
+            }
+            long aborted = ring.tryClaim(3, 100);
+            Assertions.assertEquals(0, ring.read((type, buffer, o, length) -> Assertions.fail(), 10));
+            ring.commit(offset, 4);
+            ring.abort(aborted, 1);
+            long[] sum = new long[1];
+            Assertions.assertEquals(4, ring.read((type, buffer, o, length) -> sum[0] += buffer.get(ValueLayout.JAVA_LONG_UNALIGNED, o), 10));
+            Assertions.assertEquals(6L, sum[0]);
+            Assertions.assertTrue(ring.isEmpty());
+        }
+    }
+
+    @Test
+    public void testMpsc() throws Exception {
+        final int producers = 4;
+        final int messages = 50_000;
+        try(Arena arena = Arena.ofShared()) {
+            RingBuffer ring = RingBuffer.mpsc(arena.allocate(RingBuffer.requiredSize(8192), 64L));
+            List<Thread> threads = new ArrayList<>();
+            for(int p = 0; p < producers; p++) {
+                final int producer = p;
+                threads.add(Thread.ofPlatform().start(() -> {
+                    for(int i = 0; i < messages; i++) {
+                        long offset;
+                        while ((offset = ring.tryClaim(producer, Integer.BYTES)) < 0L) {
+                            Thread.onSpinWait();
+                        }
+                        ring.buffer().set(ValueLayout.JAVA_INT_UNALIGNED, offset, i);
+                        ring.commit(offset);
+                    }
+                }));
+            }
+            int[] next = new int[producers];
+            int total = 0;
+            while (total < producers * messages) {
+                total += ring.read((type, buffer, offset, length) -> {
+                    Assertions.assertEquals(next[type], buffer.get(ValueLayout.JAVA_INT_UNALIGNED, offset));
+                    next[type]++;
+                }, 256);
+            }
+            for(Thread t : threads) {
+                t.join();
+            }
+            for(int p = 0; p < producers; p++) {
+                Assertions.assertEquals(messages, next[p]);
+            }
+            Assertions.assertTrue(ring.isEmpty());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package io.github.benrushcc.test;
+
+import io.github.benrushcc.std.RpHeap;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+public class RpHeapTest {
+    @Test
+    public void testHeap() {
+        try(RpHeap heap = RpHeap.acquire()) {
+            MemorySegment m = heap.allocateMemory(100L);
+            Assertions.assertNotEquals(0L, m.address());
+            Assertions.assertEquals(100L, m.byteSize());
+            m.fill((byte) 3);
+            MemorySegment r = heap.reallocMemory(m, 8192L);
+            Assertions.assertEquals(8192L, r.byteSize());
+            Assertions.assertEquals((byte) 3, r.get(ValueLayout.JAVA_BYTE, 99L));
+            MemorySegment aligned = heap.alignedAllocateMemory(256L, 10L);
+            Assertions.assertEquals(0L, aligned.address() & 255L);
+            Assertions.assertEquals(2L, heap.allocations());
+            Assertions.assertEquals(0L, heap.used());
+            heap.alignedFreeMemory(aligned);
+            Assertions.assertEquals(1L, heap.allocations());
+            for(int i = 0; i < 100; i++) {
+                heap.allocateMemory(64L);
+            }
+            heap.freeAll();
+            Assertions.assertEquals(0L, heap.allocations());
+            Assertions.assertNotEquals(0L, heap.allocateMemory(64L).address());
+        }
+    }
+
+    @Test
+    public void testUsage() {
+        try(RpHeap heap = RpHeap.acquire(true)) {
+            MemorySegment m = heap.allocateMemory(100L);
+            Assertions.assertTrue(heap.used() >= 100L);
+            MemorySegment r = heap.reallocMemory(m, 1000L);
+            Assertions.assertTrue(heap.used() >= 1000L);
+            Assertions.assertTrue(heap.peak() >= heap.used());
+            heap.freeMemory(r);
+            Assertions.assertEquals(0L, heap.used());
+            Assertions.assertEquals(0L, heap.allocations());
+        }
+    }
+
+    @Test
+    public void testClosed() {
+        RpHeap heap = RpHeap.acquire();
+        MemorySegment m = heap.allocateMemory(16L);
+        heap.close();
+        heap.close();
+        Assertions.assertThrows(IllegalStateException.class, () -> heap.allocateMemory(16L));
+        Assertions.assertThrows(IllegalStateException.class, () -> heap.alignedAllocateMemory(64L, 16L));
+        Assertions.assertThrows(IllegalStateException.class, () -> heap.reallocMemory(m, 32L));
+        Assertions.assertThrows(IllegalStateException.class, () -> heap.freeMemory(m));
+        Assertions.assertThrows(IllegalStateException.class, () -> heap.alignedFreeMemory(m));
+        Assertions.assertThrows(IllegalStateException.class, heap::freeAll);
+    }
+}
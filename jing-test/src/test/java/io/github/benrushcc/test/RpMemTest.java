@@ -0,0 +1,57 @@
+package io.github.benrushcc.test;
+
+import io.github.benrushcc.std.Mem;
+import io.github.benrushcc.std.RpMem;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class RpMemTest {
+    @Test
+    public void testVirtualThreads() throws Exception {
+        Mem mem = RpMem.instance();
+        List<Future<MemorySegment>> futures = new ArrayList<>();
+        try(ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for(int i = 0; i < 1000; i++) {
+                final byte b = (byte) i;
+                futures.add(executor.submit(() -> {
+                    MemorySegment m = mem.allocateMemory(64L + (b & 0xFF));
+                    m.fill(b);
+                    Thread.yield();
+                    MemorySegment r = mem.reallocMemory(m, 4096L);
+                    Assertions.assertNotEquals(0L, r.address());
+                    return r;
+                }));
+            }
+            List<MemorySegment> segments = new ArrayList<>();
+            for(int i = 0; i < futures.size(); i++) {
+                MemorySegment m = futures.get(i).get();
+                Assertions.assertEquals((byte) i, m.get(ValueLayout.JAVA_BYTE, 63L));
+                segments.add(m);
+            }
+            // half of them are freed by other virtual threads, the rest by this platform thread
+            List<Future<?>> frees = new ArrayList<>();
+            for(int i = 0; i < segments.size(); i += 2) {
+                MemorySegment m = segments.get(i);
+                frees.add(executor.submit(() -> mem.freeMemory(m)));
+            }
+            for(int i = 1; i < segments.size(); i += 2) {
+                mem.freeMemory(segments.get(i));
+            }
+            for (Future<?> f : frees) {
+                f.get();
+            }
+        }
+        MemorySegment aligned = mem.alignedAllocateMemory(4096L, 100L);
+        Assertions.assertEquals(0L, aligned.address() & 4095L);
+        Thread.ofVirtual().start(() -> mem.alignedFreeMemory(aligned)).join();
+        Assertions.assertNotNull(RpMem.globalStatistics());
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.benrushcc.test;
+
+import io.github.benrushcc.std.SharedBuffer;
+import io.github.benrushcc.std.SysMem;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class SharedBufferTest {
+    @Test
+    public void testRefCount() {
+        byte[] data = {1, 2, 3, 4, 5, 6, 7, 8};
+        SharedBuffer buffer = SharedBuffer.copyOf(SysMem.instance(), MemorySegment.ofArray(data));
+        Assertions.assertEquals(1, buffer.refCount());
+        Assertions.assertTrue(buffer.segment().isReadOnly());
+        SharedBuffer slice = buffer.retainedSlice(2L, 4L);
+        Assertions.assertEquals(2, buffer.refCount());
+        Assertions.assertEquals(2, slice.refCount());
+        Assertions.assertEquals((byte) 3, slice.segment().get(ValueLayout.JAVA_BYTE, 0L));
+        Assertions.assertFalse(buffer.release());
+        Assertions.assertEquals((byte) 6, slice.segment().get(ValueLayout.JAVA_BYTE, 3L));
+        Assertions.assertTrue(slice.release());
+        Assertions.assertThrows(IllegalStateException.class, buffer::segment);
+        Assertions.assertThrows(IllegalStateException.class, buffer::retain);
+        Assertions.assertThrows(IllegalStateException.class, slice::release);
+    }
+
+    @Test
+    public void testFanOut() throws Exception {
+        MemorySegment message = MemorySegment.ofArray(new byte[65536]);
+        message.fill((byte) 9);
+        SharedBuffer buffer = SharedBuffer.copyOf(SysMem.instance(), message);
+        try(var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>();
+            for(int i = 0; i < 10000; i++) {
+                SharedBuffer retained = buffer.retain();
+                futures.add(executor.submit(() -> {
+                    try(retained) {
+                        Assertions.assertEquals((byte) 9, retained.segment().get(ValueLayout.JAVA_BYTE, 65535L));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        Assertions.assertEquals(1, buffer.refCount());
+        Assertions.assertTrue(buffer.release());
+    }
+}
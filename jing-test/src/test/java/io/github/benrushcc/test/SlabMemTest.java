@@ -0,0 +1,91 @@
+package io.github.benrushcc.test;
+
+import io.github.benrushcc.std.InstrumentedMem;
+import io.github.benrushcc.std.SlabMem;
+import io.github.benrushcc.std.SysMem;
+import io.github.benrushcc.std.WriteBuffer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SlabMemTest {
+    @Test
+    public void testReuse() {
+        try(SlabMem mem = SlabMem.of(SysMem.instance())) {
+            MemorySegment m1 = mem.allocateMemory(100);
+            Assertions.assertEquals(100L, m1.byteSize());
+            Assertions.assertEquals(0L, m1.address() & 127L);
+            mem.freeMemory(m1);
+            MemorySegment m2 = mem.allocateMemory(120);
+            Assertions.assertEquals(m1.address(), m2.address());
+            mem.freeMemory(MemorySegment.ofAddress(m2.address()));
+        }
+    }
+
+    @Test
+    public void testRealloc() {
+        try(SlabMem mem = SlabMem.of(SysMem.instance())) {
+            MemorySegment m = mem.allocateMemory(16);
+            m.fill((byte) 7);
+            MemorySegment r = mem.reallocMemory(m, 1 << 20);
+            Assertions.assertEquals(1L << 20, r.byteSize());
+            for(int i = 0; i < 16; i++) {
+                Assertions.assertEquals((byte) 7, r.get(java.lang.foreign.ValueLayout.JAVA_BYTE, i));
+            }
+            mem.freeMemory(r);
+        }
+    }
+
+    @Test
+    public void testAligned() {
+        try(SlabMem mem = SlabMem.of(SysMem.instance())) {
+            List<MemorySegment> segments = new ArrayList<>();
+            for(int i = 0; i < 100; i++) {
+                MemorySegment m = mem.alignedAllocateMemory(256, 24);
+                Assertions.assertEquals(0L, m.address() & 255L);
+                segments.add(m);
+            }
+            segments.forEach(mem::alignedFreeMemory);
+        }
+    }
+
+    @Test
+    public void testWriteBuffer() {
+        try(SlabMem mem = SlabMem.of(SysMem.instance())) {
+            try(WriteBuffer writeBuffer = WriteBuffer.nativeBuffer(mem, 64)) {
+                for(int i = 0; i < 10000; i++) {
+                    writeBuffer.writeInt(i);
+                }
+                MemorySegment content = writeBuffer.content();
+                Assertions.assertEquals(40000L, content.byteSize());
+                Assertions.assertEquals(9999, content.getAtIndex(java.lang.foreign.ValueLayout.JAVA_INT_UNALIGNED, 9999));
+            }
+        }
+    }
+
+    @Test
+    public void testClosed() {
+        InstrumentedMem underlying = InstrumentedMem.of(SysMem.instance(), "slab");
+        SlabMem mem = SlabMem.of(underlying);
+        MemorySegment small = mem.allocateMemory(32);
+        MemorySegment cached = mem.allocateMemory(32);
+        mem.freeMemory(cached);
+        MemorySegment aligned = mem.alignedAllocateMemory(128, 64);
+        MemorySegment large = mem.allocateMemory(1 << 20);
+        long chunks = underlying.allocations() - 1L;
+        mem.close();
+        mem.close();
+        Assertions.assertEquals(chunks, underlying.frees());
+        Assertions.assertThrows(IllegalStateException.class, () -> mem.allocateMemory(32));
+        Assertions.assertThrows(IllegalStateException.class, () -> mem.alignedAllocateMemory(64, 32));
+        Assertions.assertThrows(IllegalStateException.class, () -> mem.reallocMemory(small, 64));
+        mem.freeMemory(small);
+        mem.alignedFreeMemory(MemorySegment.ofAddress(aligned.address()));
+        Assertions.assertEquals(chunks, underlying.frees());
+        mem.freeMemory(large);
+        Assertions.assertEquals(chunks + 1L, underlying.frees());
+    }
+}
@@ -0,0 +1,82 @@
+package io.github.benrushcc.test;
+
+import io.github.benrushcc.std.ReadBuffer;
+import io.github.benrushcc.std.WriteBuffer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class Utf8Test {
+    private static final String[] SAMPLES = {
+            "",
+            "hello",
+            "hello world, this is a long enough ascii string to hit the vector path several times",
+            "héllo wörld ünïcødé",
+            "中文字符串测试，混合 ascii content 以及标点",
+            "emoji 😀 pairs 🎉 across",
+            "lone \uD800 high and \uDC00 low surrogates \uD83D",
+    };
+
+    @Test
+    public void testEncode() {
+        for (String sample : SAMPLES) {
+            try(WriteBuffer writeBuffer = WriteBuffer.heap(4)) {
+                writeBuffer.writeUtf8(sample);
+                MemorySegment content = writeBuffer.content();
+                byte[] expected = sample.getBytes(StandardCharsets.UTF_8);
+                Assertions.assertEquals(expected.length, content.byteSize());
+                if(expected.length > 0) {
+                    Assertions.assertEquals(-1L, content.mismatch(MemorySegment.ofArray(expected)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLongString() {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < 1000; i++) {
+            sb.append(SAMPLES[i % SAMPLES.length]);
+        }
+        String str = sb.toString();
+        try(WriteBuffer writeBuffer = WriteBuffer.heap()) {
+            writeBuffer.writeUtf8Str(str);
+            byte[] expected = str.getBytes(StandardCharsets.UTF_8);
+            MemorySegment content = writeBuffer.content();
+            Assertions.assertEquals(expected.length + 1, content.byteSize());
+            Assertions.assertEquals(-1L, content.asSlice(0L, expected.length).mismatch(MemorySegment.ofArray(expected)));
+            Assertions.assertEquals((byte) 0, content.getAtIndex(ValueLayout.JAVA_BYTE, expected.length));
+        }
+    }
+
+    @Test
+    public void testCodePoint() {
+        try(WriteBuffer writeBuffer = WriteBuffer.heap()) {
+            String str = "aé中😀";
+            str.codePoints().forEach(writeBuffer::writeUtf8Data);
+            Assertions.assertEquals(-1L, writeBuffer.content().mismatch(MemorySegment.ofArray(str.getBytes(StandardCharsets.UTF_8))));
+        }
+    }
+
+    @Test
+    public void testDecode() {
+        byte[] bytes = "key:中文值\nemoji😀\n".getBytes(StandardCharsets.UTF_8);
+        List<MemorySegment> segments = new ArrayList<>();
+        for(int i = 0; i < bytes.length; i += 3) {
+            segments.add(MemorySegment.ofArray(bytes).asSlice(i, Math.min(3, bytes.length - i)));
+        }
+        for (ReadBuffer readBuffer : List.of(ReadBuffer.as(MemorySegment.ofArray(bytes)), ReadBuffer.as(segments))) {
+            Assertions.assertEquals("key", readBuffer.readUtf8Until((byte) ':'));
+            Assertions.assertEquals("中文值", readBuffer.readUtf8Until((byte) '\n'));
+            Assertions.assertEquals("emoji", readBuffer.readUtf8(5));
+            Assertions.assertEquals("😀", readBuffer.readUtf8(4));
+            Assertions.assertNull(readBuffer.readUtf8Until((byte) ':'));
+            Assertions.assertEquals((byte) '\n', readBuffer.readByte());
+        }
+    }
+}
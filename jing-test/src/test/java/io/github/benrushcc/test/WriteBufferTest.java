@@ -0,0 +1,311 @@
+package io.github.benrushcc.test;
+
+import io.github.benrushcc.std.MemAccess;
+import io.github.benrushcc.std.ReadBuffer;
+import io.github.benrushcc.std.SysMem;
+import io.github.benrushcc.std.WriteBuffer;
+import io.github.benrushcc.std.WriteBufferPool;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class WriteBufferTest {
+    @Test
+    public void testPool() {
+        try(WriteBufferPool pool = WriteBufferPool.of(SysMem.instance(), 64, 1024)) {
+            WriteBuffer w1 = pool.acquire();
+            w1.writeLong(1L);
+            MemorySegment m1 = w1.content();
+            w1.close();
+            WriteBuffer w2 = pool.acquire();
+            Assertions.assertSame(w1, w2);
+            Assertions.assertEquals(MemorySegment.NULL, w2.content());
+            w2.writeLong(2L);
+            Assertions.assertEquals(m1.address(), w2.content().address());
+            for(int i = 0; i < 1024; i++) {
+                w2.writeLong(i);
+            }
+            w2.close();
+            w2.close();
+            WriteBuffer w3 = pool.acquire();
+            WriteBuffer w4 = pool.acquire();
+            Assertions.assertSame(w2, w3);
+            Assertions.assertNotSame(w3, w4);
+            w3.close();
+            w4.close();
+        }
+    }
+
+    @Test
+    public void testPoolConcurrently() throws Exception {
+        try(WriteBufferPool pool = WriteBufferPool.of(SysMem.instance())) {
+            try(var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                List<Future<?>> futures = new ArrayList<>();
+                for(int i = 0; i < 1000; i++) {
+                    final int value = i;
+                    futures.add(executor.submit(() -> {
+                        for(int j = 0; j < 100; j++) {
+                            try(WriteBuffer writeBuffer = pool.acquire()) {
+                                writeBuffer.writeInt(value);
+                                Thread.yield();
+                                writeBuffer.writeInt(j);
+                                MemorySegment content = writeBuffer.content();
+                                Assertions.assertEquals(8L, content.byteSize());
+                                Assertions.assertEquals(value, content.get(ValueLayout.JAVA_INT_UNALIGNED, 0L));
+                                Assertions.assertEquals(j, content.get(ValueLayout.JAVA_INT_UNALIGNED, 4L));
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testChunked() {
+        try(WriteBuffer writeBuffer = WriteBuffer.chunked(SysMem.instance(), 16)) {
+            for(int i = 0; i < 10; i++) {
+                writeBuffer.writeInt(i);
+            }
+            byte[] bytes = new byte[40];
+            for(int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) i;
+            }
+            writeBuffer.writeBytes(bytes);
+            List<MemorySegment> contents = writeBuffer.contents();
+            long total = 0L;
+            for (MemorySegment m : contents) {
+                Assertions.assertTrue(m.byteSize() <= 16L);
+                total += m.byteSize();
+            }
+            Assertions.assertEquals(80L, total);
+            ReadBuffer readBuffer = ReadBuffer.as(contents);
+            for(int i = 0; i < 10; i++) {
+                Assertions.assertEquals(i, readBuffer.readInt());
+            }
+            Assertions.assertArrayEquals(bytes, readBuffer.copy(40L, 80L));
+        }
+    }
+
+    @Test
+    public void testBulk() {
+        int[] ints = new int[100];
+        double[] doubles = new double[100];
+        for(int i = 0; i < ints.length; i++) {
+            ints[i] = i * 0x01020304;
+            doubles[i] = i / 3.0;
+        }
+        for (WriteBuffer writeBuffer : List.of(WriteBuffer.nativeBuffer(SysMem.instance(), 16), WriteBuffer.chunked(SysMem.instance(), 13), WriteBuffer.heap(8))) {
+            try(writeBuffer) {
+                writeBuffer.writeByte((byte) 1);
+                writeBuffer.writeInts(ints, 0, ints.length, ByteOrder.BIG_ENDIAN);
+                writeBuffer.writeDoubles(doubles, 10, 90);
+                ReadBuffer readBuffer = ReadBuffer.as(writeBuffer.contents());
+                Assertions.assertEquals(1 + 400 + 720, readBuffer.size());
+                Assertions.assertEquals((byte) 1, readBuffer.readByte());
+                Assertions.assertEquals(0x01020304, readBuffer.getInt(5L, ByteOrder.BIG_ENDIAN));
+                int[] r = new int[100];
+                readBuffer.readInts(r, 0, r.length, ByteOrder.BIG_ENDIAN);
+                Assertions.assertArrayEquals(ints, r);
+                double[] d = new double[100];
+                readBuffer.readDoubles(d, 10, 90);
+                System.arraycopy(doubles, 0, d, 0, 10);
+                Assertions.assertArrayEquals(doubles, d);
+                Assertions.assertEquals(0L, readBuffer.available());
+            }
+        }
+        // chunks smaller than one element still have to fit whole elements
+        try(WriteBuffer writeBuffer = WriteBuffer.chunked(SysMem.instance(), 4)) {
+            long[] longs = {1L, -2L, Long.MAX_VALUE};
+            writeBuffer.writeLongs(longs, 0, longs.length);
+            long[] r = new long[3];
+            ReadBuffer.as(writeBuffer.contents()).readLongs(r, 0, r.length);
+            Assertions.assertArrayEquals(longs, r);
+        }
+    }
+
+    @Test
+    public void testVarint() {
+        long[] values = {0L, 1L, 127L, 128L, 300L, 16383L, 16384L, Integer.MAX_VALUE, 0xFFFFFFFFL, 1L << 55, (1L << 56) - 1, 1L << 56, Long.MAX_VALUE, -1L};
+        for (WriteBuffer writeBuffer : List.of(WriteBuffer.nativeBuffer(SysMem.instance(), 16), WriteBuffer.chunked(SysMem.instance(), 16))) {
+            try(writeBuffer) {
+                for (long value : values) {
+                    writeBuffer.writeVarLong(value);
+                    writeBuffer.writeZigZag(-value);
+                    writeBuffer.writeVarInt((int) value);
+                    writeBuffer.writeZigZag((int) -value);
+                }
+                writeBuffer.writeLengthPrefixed(new byte[]{1, 2, 3});
+                writeBuffer.writeLengthPrefixed(MemorySegment.ofArray(new byte[300]));
+                List<MemorySegment> contents = writeBuffer.contents();
+                ReadBuffer readBuffer = ReadBuffer.as(contents);
+                for (long value : values) {
+                    Assertions.assertEquals(value, readBuffer.readVarLong());
+                    Assertions.assertEquals(-value, readBuffer.readZigZagLong());
+                    Assertions.assertEquals((int) value, readBuffer.readVarInt());
+                    Assertions.assertEquals((int) -value, readBuffer.readZigZagInt());
+                }
+                ReadBuffer frame = readBuffer.readLengthPrefixed();
+                Assertions.assertArrayEquals(new byte[]{1, 2, 3}, frame.copy(0L, frame.size()));
+                Assertions.assertEquals(300L, readBuffer.readLengthPrefixed().size());
+                Assertions.assertNull(readBuffer.readLengthPrefixed());
+            }
+        }
+        try(WriteBuffer writeBuffer = WriteBuffer.heap(16)) {
+            writeBuffer.writeVarInt(300);
+            writeBuffer.writeZigZag(-2);
+            Assertions.assertArrayEquals(new byte[]{(byte) 0xAC, 0x02, 0x03}, writeBuffer.content().toArray(ValueLayout.JAVA_BYTE));
+        }
+        byte[] partial = {(byte) 0x90, 0x01, 1, 2};
+        ReadBuffer readBuffer = ReadBuffer.as(MemorySegment.ofArray(partial));
+        Assertions.assertNull(readBuffer.readLengthPrefixed());
+        Assertions.assertEquals(0L, readBuffer.readIndex());
+        Assertions.assertEquals(144L, readBuffer.readVarLong());
+        byte[] malformed = new byte[11];
+        Arrays.fill(malformed, (byte) 0xFF);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ReadBuffer.as(MemorySegment.ofArray(malformed)).readVarLong());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ReadBuffer.as(MemorySegment.ofArray(malformed)).readLengthPrefixed());
+        byte[] negative = {-1, -1, -1, -1, -1, -1, -1, -1, -1, 0x01, 1};
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ReadBuffer.as(MemorySegment.ofArray(negative)).readLengthPrefixed());
+        byte[] oversized = {-1, -1, -1, -1, -1, -1, -1, -1, -1, 0x02, 1};
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ReadBuffer.as(MemorySegment.ofArray(oversized)).readLengthPrefixed());
+        byte[] truncated = {-1, -1, -1};
+        Assertions.assertNull(ReadBuffer.as(MemorySegment.ofArray(truncated)).readLengthPrefixed());
+    }
+
+    @Test
+    public void testReserve() {
+        try(Arena arena = Arena.ofConfined()) {
+            MemorySegment reserved = arena.allocate(16L, 8L);
+            for (WriteBuffer writeBuffer : List.of(WriteBuffer.reserved(SysMem.instance(), reserved), WriteBuffer.nativeBuffer(SysMem.instance(), 8), WriteBuffer.chunked(SysMem.instance(), 8), WriteBuffer.heap(4))) {
+                try(writeBuffer) {
+                    writeBuffer.writeByte((byte) 7);
+                    long position = writeBuffer.reserve(Integer.BYTES);
+                    Assertions.assertEquals(1L, position);
+                    for(int i = 0; i < 100; i++) {
+                        writeBuffer.writeByte((byte) i);
+                    }
+                    writeBuffer.setInt(position, (int) (writeBuffer.writeIndex() - position - Integer.BYTES), ByteOrder.BIG_ENDIAN);
+                    // spans chunks for the chunked buffer
+                    writeBuffer.setLong(20L, 0x0102030405060708L, ByteOrder.LITTLE_ENDIAN);
+                    writeBuffer.setShort(writeBuffer.writeIndex() - 2, (short) -1);
+                    Assertions.assertThrows(IndexOutOfBoundsException.class, () -> writeBuffer.setInt(writeBuffer.writeIndex() - 3, 0));
+                    Assertions.assertEquals(105L, writeBuffer.writeIndex());
+                    ReadBuffer readBuffer = ReadBuffer.as(writeBuffer.contents());
+                    Assertions.assertEquals((byte) 7, readBuffer.readByte());
+                    Assertions.assertEquals(100, readBuffer.getInt(1L, ByteOrder.BIG_ENDIAN));
+                    Assertions.assertEquals(0x0102030405060708L, readBuffer.getLong(20L, ByteOrder.LITTLE_ENDIAN));
+                    Assertions.assertEquals((short) -1, readBuffer.getShort(103L));
+                    Assertions.assertEquals((byte) 97, readBuffer.getByte(102L));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testWindow() {
+        try(WriteBuffer writeBuffer = WriteBuffer.chunked(SysMem.instance(), 32)) {
+            for(int round = 0; round < 10; round++) {
+                MemorySegment window = writeBuffer.ensureWritable(24L);
+                Assertions.assertEquals(24L, window.byteSize());
+                MemAccess.setLong(window, 0L, round, ByteOrder.BIG_ENDIAN);
+                MemAccess.setInt(window, 8L, round * 2, ByteOrder.BIG_ENDIAN);
+                writeBuffer.commit(12L);
+            }
+            Assertions.assertThrows(IndexOutOfBoundsException.class, () -> writeBuffer.commit(Long.MAX_VALUE));
+            Assertions.assertEquals(120L, writeBuffer.writeIndex());
+            ReadBuffer readBuffer = ReadBuffer.as(writeBuffer.contents());
+            for(int round = 0; round < 10; round++) {
+                MemorySegment m = readBuffer.contiguous(12L);
+                Assertions.assertEquals(round, MemAccess.getLong(m, 0L, ByteOrder.BIG_ENDIAN));
+                Assertions.assertEquals(round * 2, MemAccess.getInt(m, 8L, ByteOrder.BIG_ENDIAN));
+                readBuffer.skip(12L);
+            }
+            Assertions.assertEquals(0L, readBuffer.available());
+            Assertions.assertThrows(IndexOutOfBoundsException.class, () -> readBuffer.skip(1L));
+        }
+        byte[] data = {1, 2, 3, 4, 5, 6};
+        ReadBuffer readBuffer = ReadBuffer.as(List.of(MemorySegment.ofArray(data).asSlice(0, 3), MemorySegment.ofArray(data).asSlice(3)));
+        readBuffer.skip(1L);
+        MemorySegment joined = readBuffer.contiguous(4L);
+        Assertions.assertArrayEquals(new byte[]{2, 3, 4, 5}, joined.toArray(ValueLayout.JAVA_BYTE));
+        Assertions.assertEquals(1L, readBuffer.readIndex());
+    }
+
+    @Test
+    public void testToReadBuffer() {
+        try(Arena arena = Arena.ofConfined(); WriteBufferPool pool = WriteBufferPool.of(SysMem.instance())) {
+            MemorySegment reserved = arena.allocate(64L, 8L);
+            List<WriteBuffer> writeBuffers = List.of(WriteBuffer.nativeBuffer(SysMem.instance(), 16), WriteBuffer.reserved(SysMem.instance(), reserved),
+                    WriteBuffer.reserved(SysMem.instance(), arena.allocate(4L, 8L)), WriteBuffer.chunked(SysMem.instance(), 16), WriteBuffer.heap(8), pool.acquire());
+            for (WriteBuffer writeBuffer : writeBuffers) {
+                try(writeBuffer) {
+                    Assertions.assertThrows(IllegalStateException.class, writeBuffer::toReadBuffer);
+                    for(int i = 0; i < 10; i++) {
+                        writeBuffer.writeInt(i);
+                    }
+                    ReadBuffer slice;
+                    try(ReadBuffer readBuffer = writeBuffer.toReadBuffer()) {
+                        Assertions.assertEquals(0L, writeBuffer.writeIndex());
+                        writeBuffer.writeLong(-1L);
+                        Assertions.assertEquals(40L, readBuffer.size());
+                        for(int i = 0; i < 10; i++) {
+                            Assertions.assertEquals(i, readBuffer.readInt());
+                        }
+                        readBuffer.setIndex(0L);
+                        slice = readBuffer.readSlice(8L);
+                    }
+                    Assertions.assertEquals(-1L, writeBuffer.contents().getFirst().get(ValueLayout.JAVA_LONG_UNALIGNED, 0L));
+                    // views over the reserved segment or heap arrays stay valid, owned memory does not
+                    if(writeBuffer.contents().getFirst().isNative() && writeBuffers.indexOf(writeBuffer) != 1) {
+                        Assertions.assertThrows(IllegalStateException.class, slice::readInt);
+                    } else {
+                        Assertions.assertEquals(0, slice.readInt());
+                        Assertions.assertEquals(1, slice.readInt());
+                    }
+                }
+            }
+            Assertions.assertEquals(0L, reserved.get(ValueLayout.JAVA_INT, 0L));
+            Assertions.assertEquals(9, reserved.get(ValueLayout.JAVA_INT, 36L));
+        }
+    }
+
+    @Test
+    public void testToConfinedReadBuffer() throws Exception {
+        List<WriteBuffer> writeBuffers = List.of(WriteBuffer.nativeBuffer(SysMem.instance(), 16), WriteBuffer.chunked(SysMem.instance(), 16));
+        for (WriteBuffer writeBuffer : writeBuffers) {
+            try(writeBuffer) {
+                for(int i = 0; i < 10; i++) {
+                    writeBuffer.writeInt(i);
+                }
+                ReadBuffer slice;
+                try(ReadBuffer readBuffer = writeBuffer.toReadBuffer(false)) {
+                    Assertions.assertEquals(40L, readBuffer.size());
+                    for(int i = 0; i < 10; i++) {
+                        Assertions.assertEquals(i, readBuffer.readInt());
+                    }
+                    readBuffer.setIndex(0L);
+                    slice = readBuffer.readSlice(8L);
+                    try(var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                        Future<?> future = executor.submit(() -> Assertions.assertThrows(WrongThreadException.class, () -> readBuffer.getInt(0L)));
+                        future.get();
+                    }
+                }
+                Assertions.assertThrows(IllegalStateException.class, slice::readInt);
+            }
+        }
+    }
+}
@@ -2,4 +2,6 @@ open module jing.test {
     requires transitive jing.all;
     requires transitive org.junit.jupiter.api;
     requires transitive org.junit.jupiter.params;
+    requires jdk.jfr;
+    requires java.logging;
 }
\ No newline at end of file